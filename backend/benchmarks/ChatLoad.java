@@ -0,0 +1,479 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Throughput and latency curve of the whole chat flow (auth, history, persistence, summaries) against a
+ * running backend whose model is the built-in stub.
+ *
+ * <pre>
+ * java benchmarks/ChatLoad.java [baseUrl] [rates] [stepSeconds] [chat|stream] [users] [turns] [rate|concurrency]
+ * java benchmarks/ChatLoad.java http://localhost:8080 5,10,20,40,80 30 stream
+ * java benchmarks/ChatLoad.java http://localhost:8080 50,100,200,300,400 30 chat 400 10 concurrency
+ * </pre>
+ *
+ * Each step offers one rate (turns per second, comma-separated list) open-loop, so slow replies don't lower
+ * the load, and prints a row: completed turns per second, latency percentiles and failures; in stream mode
+ * also the time to the first token. Turns continue conversations of up to {@code turns} messages from
+ * the client, sending only the new message, spread over {@code users} accounts; a conversation never has
+ * two turns in flight, and a turn that finds every one busy counts as failed (add users). The sweep stops
+ * after a step where more than half the turns failed. The {@code conc} column is the most turns in flight
+ * at once during the step.
+ *
+ * With METRICS_SCRAPE_TOKEN set to the backend's scrape token, each row also shows the HikariCP pool: the
+ * most connections in use and requests waiting for one (hikaricp_connections_active and _pending, sampled
+ * every 250 ms), and connection acquire-time percentiles over the step (from the hikaricp_connections_acquire
+ * histogram). Pool wait that stays flat while {@code conc} grows means chats don't hold a connection while
+ * the model answers. The last three columns are the upstream gate the stub sits behind, like Groq: the most
+ * model calls holding a concurrency permit (GROQ_MAX_CONCURRENT_REQUESTS), the most calls queued for
+ * admission, and the calls admission turned away with 429 during the step (GROQ_ADMISSION_*).
+ *
+ * In concurrency mode the list is a ramp of concurrent clients instead, closed-loop: each client starts its
+ * next turn as soon as the last one ends (a second after a failed one, like a client honoring Retry-After),
+ * so {@code users} must be at least the highest concurrency. The sweep ends with the highest concurrency
+ * before errors or queueing: before a step fails a turn, or its p95 latency rises more than 25% over the
+ * first step's (waiting for a thread shows in the tail first). Run it against VIRTUAL_THREADS_ENABLED=false
+ * and =true to compare thread models.
+ *
+ * Start the backend with LLM_PROVIDER=stub (tune LLM_STUB_* for the model's latency, token rate and
+ * errors) and CHAT_RATE_LIMIT_ENABLED=false, so the per-user limit doesn't turn the load away. The stub
+ * replaces only the model; admission and the concurrency cap still apply, so the upstream limits cap
+ * throughput unless they are raised (GROQ_ADMISSION_ENABLED=false, a larger GROQ_MAX_CONCURRENT_REQUESTS).
+ */
+public class ChatLoad {
+
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    private static final String SCRAPE_TOKEN = System.getenv("METRICS_SCRAPE_TOKEN");
+
+    private static final String[] QUESTIONS = {
+            "My dog has been scratching his ears a lot since yesterday, should I worry?",
+            "How often should I feed a ten week old kitten?",
+            "What can I do about my cat throwing up hairballs?",
+            "Is it normal for a senior dog to sleep most of the day?",
+            "My rabbit hasn't eaten much today, what should I look out for?",
+    };
+
+    // A conversation and the account it belongs to; idle ones wait in a queue for the next turn
+    private static final class Session {
+        final String token;
+        String conversationId;
+        int turns;
+
+        Session(String token) {
+            this.token = token;
+        }
+    }
+
+    // One turn: total latency and time to the first token (stream mode), in ms, -1 when it failed; and when
+    // it finished
+    private record Turn(long millis, long firstTokenMillis, long finishedNanos) {
+
+        static Turn failed() {
+            return new Turn(-1, -1, System.nanoTime());
+        }
+
+        static Turn ok(long startNanos, long firstTokenMillis) {
+            long now = System.nanoTime();
+            return new Turn(TimeUnit.NANOSECONDS.toMillis(now - startNanos), firstTokenMillis, now);
+        }
+    }
+
+    // A step's turns and the most of them in flight at once
+    private record Step(List<Turn> turns, int maxInFlight) {
+    }
+
+    // What the sweep needs from a printed row: failed turns, and the p95 latency (-1 when none succeeded)
+    private record Row(long failed, long p95) {
+    }
+
+    // The connection pool in one scrape: connections in use, requests waiting for one, and the cumulative
+    // acquire-time histogram (upper bound in seconds -> count)
+    private record PoolSample(double active, double pending, TreeMap<Double, Double> acquireBuckets,
+                              double upstreamInFlight, double admissionQueue, double admissionRejected) {
+    }
+
+    // Samples the pool over a step: the busiest it got, and the acquire histogram at the start so the
+    // step's own percentiles can be taken from the difference
+    private static final class PoolWatch {
+        final String base;
+        final PoolSample first;
+        final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        volatile double maxActive;
+        volatile double maxPending;
+        volatile double maxUpstream;
+        volatile double maxQueued;
+
+        PoolWatch(String base) {
+            this.base = base;
+            this.first = scrapePool(base);
+            sampler.scheduleAtFixedRate(this::sample, 0, 250, TimeUnit.MILLISECONDS);
+        }
+
+        void sample() {
+            try {
+                PoolSample now = scrapePool(base);
+                maxActive = Math.max(maxActive, now.active());
+                maxPending = Math.max(maxPending, now.pending());
+                maxUpstream = Math.max(maxUpstream, now.upstreamInFlight());
+                maxQueued = Math.max(maxQueued, now.admissionQueue());
+            } catch (RuntimeException e) {
+                // a missed sample; the next one runs anyway
+            }
+        }
+
+        String stop() {
+            sampler.shutdownNow();
+            PoolSample last = scrapePool(base);
+            return String.format(" %8.0f %7.0f %9s %9s %6.0f %6.0f %7.0f", Math.max(maxActive, last.active()),
+                    Math.max(maxPending, last.pending()),
+                    acquireQuantile(first, last, 0.50), acquireQuantile(first, last, 0.99),
+                    Math.max(maxUpstream, last.upstreamInFlight()), Math.max(maxQueued, last.admissionQueue()),
+                    last.admissionRejected() - first.admissionRejected());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String base = args.length > 0 ? args[0] : "http://localhost:8080";
+        int[] rates = Stream.of((args.length > 1 ? args[1] : "5,10,20,40").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        int stepSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        boolean stream = args.length > 3 && args[3].equals("stream");
+        int users = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+        int turns = args.length > 5 ? Integer.parseInt(args[5]) : 10;
+        boolean concurrency = args.length > 6 && args[6].equals("concurrency");
+
+        String suffix = Long.toString(System.nanoTime(), 36);
+        ConcurrentLinkedQueue<Session> idle = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < users; i++) {
+            idle.add(new Session(register(base, "load-" + suffix + "-" + i + "@example.com")));
+        }
+
+        System.out.printf("%s, %d users, conversations of %d turns, %ds per step%s%n",
+                stream ? "/api/chat/stream" : "/api/chat", users, turns, stepSeconds,
+                concurrency ? ", closed-loop clients" : "");
+        boolean pool = SCRAPE_TOKEN != null && !SCRAPE_TOKEN.isBlank();
+        System.out.printf("%8s %5s %8s %7s %7s %7s %7s %7s %9s %9s%s%n",
+                "offered", "conc", "done/s", "failed", "p50", "p95", "p99", "max", "ttft p50", "ttft p99",
+                pool ? String.format(" %8s %7s %9s %9s %6s %6s %7s", "pool act", "pending", "acq p50", "acq p99",
+                        "model", "queued", "adm 429") : "");
+        long firstP95 = -1;
+        int highestClean = 0;
+        boolean clean = true;
+        for (int load : rates) {
+            PoolWatch watch = pool ? new PoolWatch(base) : null;
+            long start = System.nanoTime();
+            Step step = concurrency
+                    ? closedStep(base, idle, load, stepSeconds, stream, turns)
+                    : step(base, idle, load, stepSeconds, stream, turns);
+            String poolColumns = watch != null ? watch.stop() : "";
+            Row row = report(concurrency ? String.valueOf(load) : load + "/s", step, start, stepSeconds, stream, poolColumns);
+            firstP95 = firstP95 < 0 ? row.p95() : firstP95;
+            clean = clean && row.failed() == 0 && row.p95() <= firstP95 * 5 / 4;
+            highestClean = clean ? load : highestClean;
+            if (row.failed() * 2 > step.turns().size()) {
+                System.out.println("more than half the turns failed; stopping");
+                break;
+            }
+        }
+        if (concurrency) {
+            System.out.println("highest concurrency before errors or queueing: "
+                    + (highestClean > 0 ? highestClean + " clients" : "none, the first step already failed turns"));
+        }
+    }
+
+    // Starts turns at `perSecond` for the step, then waits for the ones still running
+    private static Step step(String base, ConcurrentLinkedQueue<Session> idle, int perSecond, int seconds,
+                             boolean stream, int turns) throws InterruptedException {
+        List<Turn> results = new CopyOnWriteArrayList<>();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger sent = new AtomicInteger();
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        ticker.scheduleAtFixedRate(() -> Thread.ofVirtual().start(() -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                results.add(turn(base, idle, sent, stream, turns));
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }), 0, 1_000_000 / perSecond, TimeUnit.MICROSECONDS);
+        Thread.sleep(seconds * 1000L);
+        ticker.shutdownNow();
+        while (inFlight.get() > 0) {
+            Thread.sleep(50);
+        }
+        return new Step(results, maxInFlight.get());
+    }
+
+    // Keeps `clients` turns going for the step, each client starting its next turn when the last one ends
+    private static Step closedStep(String base, ConcurrentLinkedQueue<Session> idle, int clients, int seconds,
+                                   boolean stream, int turns) throws InterruptedException {
+        List<Turn> results = new CopyOnWriteArrayList<>();
+        AtomicInteger sent = new AtomicInteger();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                while (System.nanoTime() < end) {
+                    Turn turn = turn(base, idle, sent, stream, turns);
+                    results.add(turn);
+                    if (turn.millis() < 0) {
+                        try {
+                            Thread.sleep(1000); // back off as a client would on 429/503
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return new Step(results, clients);
+    }
+
+    // One turn in the next idle conversation, starting a new one once it has `turns` turns
+    private static Turn turn(String base, ConcurrentLinkedQueue<Session> idle, AtomicInteger sent, boolean stream,
+                             int turns) {
+        Session session = idle.poll();
+        if (session == null) {
+            return Turn.failed(); // every conversation busy: more users are needed for this load
+        }
+        if (session.turns >= turns) {
+            session.conversationId = null;
+            session.turns = 0;
+        }
+        String body = "{\"message\":\"" + QUESTIONS[sent.getAndIncrement() % QUESTIONS.length] + "\""
+                + (session.conversationId != null ? ",\"conversationId\":\"" + session.conversationId + "\"" : "")
+                + "}";
+        try {
+            return stream ? streamTurn(base, session, body) : chatTurn(base, session, body);
+        } finally {
+            idle.add(session);
+        }
+    }
+
+    private static Turn chatTurn(String base, Session session, String body) {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = HTTP.send(request(base + "/api/chat", body, session.token),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return Turn.failed();
+            }
+            session.conversationId = field(response.body(), "conversationId");
+            session.turns++;
+            return Turn.ok(start, -1);
+        } catch (Exception e) {
+            return Turn.failed(); // connection refused, reset or timed out
+        }
+    }
+
+    // Reads the SSE reply to the end: `conversation` first, then `token`s, then `done` (or `error`)
+    private static Turn streamTurn(String base, Session session, String body) {
+        long start = System.nanoTime();
+        long firstToken = -1;
+        try {
+            HttpResponse<Stream<String>> response = HTTP.send(request(base + "/api/chat/stream", body, session.token),
+                    HttpResponse.BodyHandlers.ofLines());
+            try (Stream<String> lines = response.body()) {
+                if (response.statusCode() != 200) {
+                    return Turn.failed();
+                }
+                String event = null;
+                Iterator<String> it = lines.iterator();
+                while (it.hasNext()) {
+                    String line = it.next();
+                    if (line.startsWith("event:")) {
+                        event = line.substring(6).strip();
+                    } else if (line.startsWith("data:") && event != null) {
+                        switch (event) {
+                            case "conversation" -> session.conversationId = field(line, "conversationId");
+                            case "token" -> firstToken = firstToken < 0 ? elapsedMillis(start) : firstToken;
+                            case "done" -> {
+                                session.turns++;
+                                return Turn.ok(start, firstToken);
+                            }
+                            case "error" -> {
+                                return Turn.failed();
+                            }
+                            default -> { }
+                        }
+                    }
+                }
+                return Turn.failed(); // closed without done
+            }
+        } catch (Exception e) {
+            return Turn.failed();
+        }
+    }
+
+    // Prints the step's row. Throughput counts the turns that finished within the step, from the first one
+    // (before it, the first replies are still being generated).
+    private static Row report(String offered, Step step, long startNanos, int seconds, boolean stream, String poolColumns) {
+        List<Turn> results = step.turns();
+        long end = startNanos + TimeUnit.SECONDS.toNanos(seconds);
+        long[] finished = results.stream().filter(t -> t.millis() >= 0 && t.finishedNanos() <= end)
+                .mapToLong(Turn::finishedNanos).sorted().toArray();
+        double done = finished.length < 2 ? 0 : (finished.length - 1) / ((end - finished[0]) / 1e9);
+        List<Long> ok = new ArrayList<>();
+        List<Long> firstTokens = new ArrayList<>();
+        for (Turn turn : results) {
+            if (turn.millis() >= 0) {
+                ok.add(turn.millis());
+                if (turn.firstTokenMillis() >= 0) {
+                    firstTokens.add(turn.firstTokenMillis());
+                }
+            }
+        }
+        long failed = results.size() - ok.size();
+        if (ok.isEmpty()) {
+            System.out.printf("%8s %5d %8s %7d%s%n", offered, step.maxInFlight(), "-", failed, poolColumns);
+            return new Row(failed, -1);
+        }
+        Collections.sort(ok);
+        Collections.sort(firstTokens);
+        System.out.printf("%8s %5d %8.1f %7d %5dms %5dms %5dms %5dms %9s %9s%s%n", offered, step.maxInFlight(),
+                done, failed, percentile(ok, 50), percentile(ok, 95), percentile(ok, 99), ok.get(ok.size() - 1),
+                stream && !firstTokens.isEmpty() ? percentile(firstTokens, 50) + "ms" : "-",
+                stream && !firstTokens.isEmpty() ? percentile(firstTokens, 99) + "ms" : "-", poolColumns);
+        return new Row(failed, percentile(ok, 95));
+    }
+
+    private static long percentile(List<Long> sorted, int p) {
+        return sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(p / 100.0 * sorted.size()) - 1));
+    }
+
+    // The q-quantile of connection acquire time between two scrapes, interpolated within its bucket the way
+    // PromQL's histogram_quantile does
+    private static String acquireQuantile(PoolSample before, PoolSample after, double q) {
+        double total = after.acquireBuckets().getOrDefault(Double.POSITIVE_INFINITY, 0.0)
+                - before.acquireBuckets().getOrDefault(Double.POSITIVE_INFINITY, 0.0);
+        if (total <= 0) {
+            return "-";
+        }
+        double rank = q * total;
+        double lowerBound = 0;
+        double lowerCount = 0;
+        for (Map.Entry<Double, Double> bucket : after.acquireBuckets().entrySet()) {
+            double count = bucket.getValue() - before.acquireBuckets().getOrDefault(bucket.getKey(), 0.0);
+            if (count >= rank) {
+                if (bucket.getKey().isInfinite()) {
+                    return String.format(">%.0fms", lowerBound * 1000);
+                }
+                double seconds = lowerBound + (bucket.getKey() - lowerBound) * (rank - lowerCount) / (count - lowerCount);
+                return String.format("%.2fms", seconds * 1000);
+            }
+            lowerBound = bucket.getKey();
+            lowerCount = count;
+        }
+        return "-";
+    }
+
+    private static PoolSample scrapePool(String base) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/actuator/prometheus"))
+                .timeout(Duration.ofSeconds(5))
+                .header("Authorization", "Bearer " + SCRAPE_TOKEN)
+                .build();
+        try {
+            HttpResponse<Stream<String>> response = HTTP.send(request, HttpResponse.BodyHandlers.ofLines());
+            try (Stream<String> lines = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("Metrics scrape returned " + response.statusCode()
+                            + "; is METRICS_SCRAPE_TOKEN the backend's scrape token?");
+                }
+                double active = 0;
+                double pending = 0;
+                double upstream = 0;
+                double queued = 0;
+                double rejected = 0;
+                TreeMap<Double, Double> buckets = new TreeMap<>();
+                for (Iterator<String> it = lines.iterator(); it.hasNext(); ) {
+                    String line = it.next();
+                    if (line.startsWith("hikaricp_connections_active{")) {
+                        active += sampleValue(line);
+                    } else if (line.startsWith("hikaricp_connections_pending{")) {
+                        pending += sampleValue(line);
+                    } else if (line.startsWith("pawfect_upstream_in_flight")) {
+                        upstream = sampleValue(line);
+                    } else if (line.startsWith("pawfect_upstream_admission_queue")) {
+                        queued = sampleValue(line);
+                    } else if (line.startsWith("pawfect_upstream_admission_rejected_total")) {
+                        rejected = sampleValue(line);
+                    } else if (line.startsWith("hikaricp_connections_acquire_seconds_bucket{")) {
+                        String le = line.substring(line.indexOf("le=\"") + 4, line.indexOf('"', line.indexOf("le=\"") + 4));
+                        buckets.merge(le.equals("+Inf") ? Double.POSITIVE_INFINITY : Double.parseDouble(le),
+                                sampleValue(line), Double::sum);
+                    }
+                }
+                return new PoolSample(active, pending, buckets, upstream, queued, rejected);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Metrics scrape failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scraping metrics", e);
+        }
+    }
+
+    private static double sampleValue(String line) {
+        return Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    // The string value of a top-level field in a small JSON document
+    private static String field(String json, String name) {
+        int start = json.indexOf("\"" + name + "\":\"") + name.length() + 4;
+        if (start < name.length() + 4) {
+            throw new IllegalStateException("No " + name + " in " + json);
+        }
+        return json.substring(start, json.indexOf('"', start));
+    }
+
+    private static String register(String base, String email) {
+        try {
+            String response = HTTP.send(request(base + "/api/auth/register",
+                    "{\"name\":\"Load test\",\"email\":\"" + email + "\",\"password\":\"password123\"}", null),
+                    HttpResponse.BodyHandlers.ofString()).body();
+            return field(response, "token");
+        } catch (Exception e) {
+            throw new IllegalStateException("Registration of " + email + " failed", e);
+        }
+    }
+
+    private static HttpRequest request(String url, String body, String token) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(120))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return request.build();
+    }
+}
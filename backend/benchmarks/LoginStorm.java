@@ -0,0 +1,159 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures /api/chat latency before and during a login storm against a running backend.
+ *
+ * <pre>
+ * java benchmarks/LoginStorm.java [baseUrl] [stormThreads] [phaseSeconds] [chatPerSecond] [valid|invalid]
+ * </pre>
+ *
+ * Chat is sent open-loop at a fixed rate, so slow replies don't lower the load. The storm logs in with
+ * the right password ("valid": every request hashes) or a wrong one ("invalid": credential stuffing,
+ * which the login throttle should turn away). Start the backend with CHAT_RATE_LIMIT_ENABLED=false and
+ * GROQ_ADMISSION_ENABLED=false, pointed at a stub model server, so only the login load varies. For the
+ * "valid" run also set LOGIN_THROTTLE_ENABLED=false: all storm requests share one IP, and the per-IP
+ * limit would otherwise hide the hashing pool's behaviour.
+ */
+public class LoginStorm {
+
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    public static void main(String[] args) throws Exception {
+        String base = args.length > 0 ? args[0] : "http://localhost:8080";
+        int stormThreads = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int phaseSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int chatPerSecond = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        boolean validPasswords = args.length <= 4 || !args[4].equals("invalid");
+
+        String suffix = Long.toString(System.nanoTime(), 36);
+        String chatToken = register(base, "chat-" + suffix + "@example.com");
+        String stormEmail = "storm-" + suffix + "@example.com";
+        register(base, stormEmail);
+        String stormBody = credentials(stormEmail, validPasswords ? "password123" : "wrong-password");
+
+        System.out.printf("chat %d/s, %d storm threads (%s passwords), %ds per phase%n",
+                chatPerSecond, stormThreads, validPasswords ? "valid" : "invalid", phaseSeconds);
+
+        List<Long> baseline = chatPhase(base, chatToken, chatPerSecond, phaseSeconds);
+        report("chat, idle", baseline);
+
+        AtomicBoolean storming = new AtomicBoolean(true);
+        Map<Integer, LongAdder> loginStatuses = new ConcurrentHashMap<>();
+        List<Thread> storm = new ArrayList<>();
+        for (int i = 0; i < stormThreads; i++) {
+            storm.add(Thread.ofVirtual().start(() -> {
+                while (storming.get()) {
+                    int status;
+                    try {
+                        status = post(base + "/api/auth/login", stormBody, null).statusCode();
+                    } catch (IllegalStateException e) {
+                        status = 0; // connection refused or timed out
+                    }
+                    loginStatuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+                }
+            }));
+        }
+        List<Long> underStorm = chatPhase(base, chatToken, chatPerSecond, phaseSeconds);
+        storming.set(false);
+        for (Thread thread : storm) {
+            thread.join();
+        }
+        report("chat, login storm", underStorm);
+
+        Map<Integer, Long> logins = new TreeMap<>();
+        loginStatuses.forEach((status, count) -> logins.put(status, count.sum()));
+        System.out.printf("logins during storm by status: %s (%.0f/s)%n", logins,
+                logins.values().stream().mapToLong(Long::longValue).sum() / (double) phaseSeconds);
+    }
+
+    // Sends chat turns at a fixed rate for the phase; returns each turn's latency in ms (-1 for failures)
+    private static List<Long> chatPhase(String base, String token, int perSecond, int seconds) throws Exception {
+        List<Long> latencies = new CopyOnWriteArrayList<>();
+        AtomicInteger inFlight = new AtomicInteger();
+        String body = "{\"message\":\"How often should I feed a puppy?\"}";
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        ticker.scheduleAtFixedRate(() -> Thread.ofVirtual().start(() -> {
+            inFlight.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                int status = post(base + "/api/chat", body, token).statusCode();
+                latencies.add(status == 200 ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) : -1);
+            } catch (IllegalStateException e) {
+                latencies.add(-1L);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }), 0, 1_000_000 / perSecond, TimeUnit.MICROSECONDS);
+        Thread.sleep(seconds * 1000L);
+        ticker.shutdownNow();
+        while (inFlight.get() > 0) {
+            Thread.sleep(50);
+        }
+        return latencies;
+    }
+
+    private static void report(String phase, List<Long> latencies) {
+        List<Long> ok = new ArrayList<>(latencies.stream().filter(l -> l >= 0).toList());
+        Collections.sort(ok);
+        long failed = latencies.size() - ok.size();
+        if (ok.isEmpty()) {
+            System.out.printf("%-18s no successful requests (%d failed)%n", phase, failed);
+            return;
+        }
+        System.out.printf("%-18s n=%d failed=%d  p50=%dms p95=%dms p99=%dms max=%dms%n", phase, ok.size(), failed,
+                percentile(ok, 50), percentile(ok, 95), percentile(ok, 99), ok.get(ok.size() - 1));
+    }
+
+    private static long percentile(List<Long> sorted, int p) {
+        return sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(p / 100.0 * sorted.size()) - 1));
+    }
+
+    private static String register(String base, String email) {
+        String response = post(base + "/api/auth/register",
+                "{\"name\":\"Load test\"," + credentials(email, "password123").substring(1), null).body();
+        int start = response.indexOf("\"token\":\"") + 9;
+        if (start < 9) {
+            throw new IllegalStateException("Registration failed: " + response);
+        }
+        return response.substring(start, response.indexOf('"', start));
+    }
+
+    private static String credentials(String email, String password) {
+        return "{\"email\":\"" + email + "\",\"password\":\"" + password + "\"}";
+    }
+
+    private static HttpResponse<String> post(String url, String body, String token) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        try {
+            return HTTP.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        } catch (Exception e) {
+            throw new IllegalStateException("Request to " + url + " failed", e);
+        }
+    }
+}
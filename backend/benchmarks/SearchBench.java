@@ -0,0 +1,131 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures conversation search latency straight against Postgres, with the query and candidate count read
+ * from the sources so it always runs what the backend runs.
+ *
+ * <pre>
+ * java -cp postgresql.jar benchmarks/SearchBench.java [jdbcUrl] [userId] [queries]
+ * </pre>
+ *
+ * Run it from backend/ against a database seeded with benchmarks/search-seed.sql (user 1 is the one with
+ * 100k messages). Queries mix single words, two words, a phrase, an exclusion and an "or", each word drawn
+ * from one of four frequency bands of the seed's vocabulary, and ask for a first page of 20. The statement
+ * is prepared once, as Hibernate does, so Postgres settles on the plan the backend would get.
+ */
+public class SearchBench {
+
+    private static final Path REPOSITORY = Path.of("src/main/java/com/pawfect/backend/repository/ConversationRepository.java");
+    private static final Path SERVICE = Path.of("src/main/java/com/pawfect/backend/service/ConversationService.java");
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "jdbc:postgresql://localhost:5432/pawfect_bench?user=postgres";
+        long userId = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        String repository = Files.readString(REPOSITORY);
+        Matcher query = Pattern.compile("\"\"\"\\s*(WITH terms AS.*?)\"\"\", nativeQuery = true\\)\\s*"
+                + "List<ConversationSearchView> search\\(", Pattern.DOTALL).matcher(repository);
+        Matcher candidates = Pattern.compile("SEARCH_CANDIDATES = (\\d+);").matcher(Files.readString(SERVICE));
+        if (!query.find() || !candidates.find()) {
+            throw new IllegalStateException("search query or SEARCH_CANDIDATES not found; run from backend/");
+        }
+        List<String> names = new ArrayList<>();
+        Matcher parameter = Pattern.compile("(?<!:):([a-zA-Z]+)").matcher(query.group(1));
+        StringBuilder sql = new StringBuilder();
+        while (parameter.find()) {
+            names.add(parameter.group(1));
+            parameter.appendReplacement(sql, "?");
+        }
+        parameter.appendTail(sql);
+
+        try (Connection connection = DriverManager.getConnection(url);
+             PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            List<String> queries = queries(vocabulary(connection), count);
+            int candidateCount = Integer.parseInt(candidates.group(1));
+            for (int i = 0; i < 20; i++) { // warm up, and let the plan cache settle
+                run(statement, names, userId, candidateCount, queries.get(i));
+            }
+
+            long[] nanos = new long[count];
+            for (int i = 0; i < count; i++) {
+                long start = System.nanoTime();
+                run(statement, names, userId, candidateCount, queries.get(i));
+                nanos[i] = System.nanoTime() - start;
+            }
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            System.out.printf("user %d, %d queries, %s candidates: p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    userId, count, candidates.group(1), sorted[count / 2] / 1e6, sorted[count * 95 / 100] / 1e6,
+                    sorted[count * 99 / 100] / 1e6, sorted[count - 1] / 1e6);
+            for (int i = 0; i < count; i++) {
+                if (nanos[i] >= sorted[count * 99 / 100]) {
+                    System.out.printf("  %.1f ms  %s%n", nanos[i] / 1e6, queries.get(i));
+                }
+            }
+        }
+    }
+
+    private static List<String> vocabulary(Connection connection) throws SQLException {
+        List<String> words = new ArrayList<>();
+        try (ResultSet rs = connection.createStatement().executeQuery("SELECT word FROM bench_vocab ORDER BY n")) {
+            while (rs.next()) {
+                words.add(rs.getString(1));
+            }
+        }
+        return words;
+    }
+
+    // Bands by rank in the seed's vocabulary: very common, common, uncommon, rare
+    private static List<String> queries(List<String> words, int count) {
+        Random random = new Random(42);
+        int[][] bands = {{10, 60}, {60, 300}, {300, 1000}, {1000, words.size()}};
+        List<String> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int[] first = bands[i % 4];
+            int[] second = bands[(i / 4) % 4];
+            String a = words.get(first[0] + random.nextInt(first[1] - first[0]));
+            String b = words.get(second[0] + random.nextInt(second[1] - second[0]));
+            queries.add(switch (i % 5) {
+                case 0 -> a;
+                case 1 -> a + " " + b;
+                case 2 -> "\"" + a + " " + b + "\"";
+                case 3 -> a + " -" + b;
+                default -> a + " or " + b;
+            });
+        }
+        return queries;
+    }
+
+    private static void run(PreparedStatement statement, List<String> names, long userId, int candidates,
+                            String text) throws SQLException {
+        for (int i = 0; i < names.size(); i++) {
+            Object value = switch (names.get(i)) {
+                case "userId" -> userId;
+                case "text" -> text;
+                case "candidates" -> candidates;
+                case "limit" -> 21; // a page of 20 and one more, as the service asks
+                case "offset" -> 0;
+                default -> throw new IllegalStateException("unexpected parameter :" + names.get(i));
+            };
+            statement.setObject(i + 1, value);
+        }
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                rs.getString("snippet");
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+-- Insert throughput and index size of the messages table keyed by random VARCHAR(36) UUIDs (before)
+-- versus time-ordered native uuid ids (after). Run against a scratch database:
+--
+--   psql -d pawfect_bench -f benchmarks/message-ids.sql
+--
+-- Rows are inserted in time order in chunks of 500k (one transaction each), shaped like the app's
+-- messages: 200k conversations, interleaved turns, the (conversation_id, created_at, id) index.
+-- Set bench.rows below to change the table size.
+
+SET bench.rows = '10000000';
+
+DROP TABLE IF EXISTS bench_messages_v4, bench_messages_v7, bench_conversations, bench_results;
+DROP PROCEDURE IF EXISTS bench_fill;
+DROP FUNCTION IF EXISTS bench_uuid_v7;
+
+-- UUIDv7 from a timestamp: 48-bit millis over a random v4, version nibble flipped from 4 to 7
+CREATE FUNCTION bench_uuid_v7(ts timestamptz) RETURNS uuid LANGUAGE sql VOLATILE AS $$
+    SELECT encode(set_bit(set_bit(overlay(uuid_send(gen_random_uuid())
+        PLACING substring(int8send((extract(epoch FROM ts) * 1000)::bigint) FROM 3) FROM 1 FOR 6),
+        52, 1), 53, 1), 'hex')::uuid
+$$;
+
+CREATE TABLE bench_conversations (n int PRIMARY KEY, v4 varchar(36) NOT NULL, v7 uuid NOT NULL);
+INSERT INTO bench_conversations
+SELECT n, gen_random_uuid()::text, bench_uuid_v7(timestamp '2025-01-01' + n * interval '1 second')
+FROM generate_series(0, 199999) n;
+
+CREATE TABLE bench_messages_v4 (
+    id varchar(36) PRIMARY KEY,
+    conversation_id varchar(36) NOT NULL,
+    role varchar(255) NOT NULL,
+    content text NOT NULL,
+    created_at timestamp
+);
+CREATE INDEX bench_messages_v4_conversation_created ON bench_messages_v4 (conversation_id, created_at, id);
+
+CREATE TABLE bench_messages_v7 (
+    id uuid PRIMARY KEY,
+    conversation_id uuid NOT NULL,
+    role varchar(255) NOT NULL,
+    content text NOT NULL,
+    created_at timestamp
+);
+CREATE INDEX bench_messages_v7_conversation_created ON bench_messages_v7 (conversation_id, created_at, id);
+
+CREATE TABLE bench_results (variant text, rows bigint, seconds numeric);
+
+CREATE PROCEDURE bench_fill(variant text, total bigint, chunk bigint) LANGUAGE plpgsql AS $$
+DECLARE
+    started timestamptz := clock_timestamp();
+    base timestamp := timestamp '2026-01-01';
+BEGIN
+    FOR lo IN 0 .. total - 1 BY chunk LOOP
+        IF variant = 'v4' THEN
+            INSERT INTO bench_messages_v4
+            SELECT gen_random_uuid()::text, c.v4, CASE WHEN g % 2 = 0 THEN 'user' ELSE 'assistant' END,
+                   'My dog ate some chocolate an hour ago, what should I do?', base + g * interval '1 millisecond'
+            FROM generate_series(lo, least(lo + chunk, total) - 1) g
+            JOIN bench_conversations c ON c.n = g % 200000;
+        ELSE
+            INSERT INTO bench_messages_v7
+            SELECT bench_uuid_v7(base + g * interval '1 millisecond'), c.v7,
+                   CASE WHEN g % 2 = 0 THEN 'user' ELSE 'assistant' END,
+                   'My dog ate some chocolate an hour ago, what should I do?', base + g * interval '1 millisecond'
+            FROM generate_series(lo, least(lo + chunk, total) - 1) g
+            JOIN bench_conversations c ON c.n = g % 200000;
+        END IF;
+        COMMIT;
+    END LOOP;
+    INSERT INTO bench_results VALUES (variant, total, extract(epoch FROM clock_timestamp() - started));
+    COMMIT;
+END $$;
+
+CALL bench_fill('v4', current_setting('bench.rows')::bigint, 500000);
+CHECKPOINT;
+CALL bench_fill('v7', current_setting('bench.rows')::bigint, 500000);
+CHECKPOINT;
+
+SELECT r.variant,
+       r.rows,
+       round(r.seconds, 1) AS seconds,
+       round(r.rows / r.seconds) AS rows_per_second,
+       pg_size_pretty(pg_relation_size(t.oid)) AS heap,
+       pg_size_pretty(pg_relation_size((t.relname || '_pkey')::regclass)) AS pkey,
+       pg_size_pretty(pg_relation_size((t.relname || '_conversation_created')::regclass)) AS conversation_index
+FROM bench_results r
+JOIN pg_class t ON t.relname = 'bench_messages_' || r.variant
+ORDER BY r.variant;
@@ -0,0 +1,72 @@
+-- Seed data for SearchBench.java: one heavy user with 100k messages (1,000 conversations of 100) and 500
+-- users with 1,000 each (20 conversations of 50), about 600k messages of 10 to 200 words. Words are drawn
+-- log-uniformly (Zipf-like) from a 3,716-word vocabulary: about 350 pet-care words, then a tail of made-up
+-- rare terms. Every 10th conversation of the heavy user keeps a random (v4) id, as converted by V2.
+--
+-- Run it on a scratch database migrated to V8, then migrate to the latest version so V9 backfills the
+-- search chunks the way it would on an existing database (with the Flyway CLI, for example):
+--
+--   flyway -url=jdbc:postgresql://localhost/pawfect_bench -locations=filesystem:src/main/resources/db/migration \
+--          -target=8 migrate
+--   psql -d pawfect_bench -f benchmarks/search-seed.sql
+--   flyway ... migrate   (drop -target)
+--
+-- Needs a superuser: triggers are disabled while seeding, so V5's per-conversation documents (which V9
+-- replaces) aren't maintained row by row.
+
+SET session_replication_role = replica;
+
+DROP TABLE IF EXISTS bench_vocab;
+CREATE TABLE bench_vocab (n int PRIMARY KEY, word text NOT NULL);
+INSERT INTO bench_vocab
+SELECT row_number() OVER () - 1, w FROM unnest(string_to_array(
+'the a and to of my is it i you he she your in for that this with on be not have what do can should at if are was but so or as about vet dog cat puppy kitten food eat ate eating water drink vomit vomiting vomited diarrhea blood stool walk walking leg limp limping paw ear ears eye eyes skin itch itching scratch scratching fleas tick ticks worm worms deworm vaccine vaccination shot shots rabies parvo distemper fever lethargic tired sleep sleeping breathing cough coughing sneeze sneezing nose runny weight fat thin diet kibble wet dry treats treat chew chewing toy bone chocolate grapes raisins onion garlic xylitol toxic poison poisoning emergency clinic appointment hours days week weeks month months year years old young senior age breed labrador retriever poodle bulldog beagle terrier shepherd husky persian siamese maine coon tabby rabbit hamster guinea pig bird parrot fish tank litter box urine pee peeing poop pooping house training crate bark barking bite biting aggressive anxious anxiety calm behavior grooming bath brush fur shedding nail nails trim teeth dental gum gums breath smell swelling swollen lump bump rash wound cut bleeding bandage surgery spay neuter stitches cone medicine medication pill pills dose antibiotic pain painful hurt hurts crying whining shaking trembling seizure collapse allergy allergies allergic pollen grass outside inside yard park run running play playing jump jumping stairs hip joint arthritis stiff morning night evening today yesterday tomorrow started since after before during while still again normal unusual worried concerned serious mild severe sudden slowly quickly better worse same keep monitor watch call recommend suggest try give avoid stop help need want think know seems looks feel feels might could would probably likely usually sometimes often always never much many more less small large big little lot some any every each other another first last next time hour minute twice once daily meal meals bowl appetite hungry thirsty drinking lots symptoms sign signs check exam test tests x-ray bloodwork results doctor nurse insurance cost price cheap expensive home remedy safe unsafe okay fine good bad great sure also just only even very really quite'
+, ' ')) w;
+-- long tail of rarer made-up terms (names of places, products, drugs)
+INSERT INTO bench_vocab
+SELECT (SELECT count(*) FROM bench_vocab) + g,
+       (ARRAY['br','t','k','m','v','s','pl','gr','d','z','fl','n'])[1 + (g * 7) % 12]
+       || (ARRAY['a','e','i','o','u','ae','ou'])[1 + (g * 3) % 7]
+       || (ARRAY['l','n','r','x','v','st','nd','k'])[1 + (g / 12) % 8]
+       || (ARRAY['a','o','i','e','u'])[1 + (g / 96) % 5]
+       || (ARRAY['n','r','s','k','lt','th','m'])[1 + (g / 480) % 7]
+FROM generate_series(0, 3359) g;
+
+-- UUIDv7 from a timestamp: 48-bit millis over a random v4, version nibble flipped from 4 to 7
+CREATE OR REPLACE FUNCTION bench_uuid_v7(ts timestamp) RETURNS uuid LANGUAGE sql VOLATILE AS $$
+    SELECT encode(set_bit(set_bit(overlay(uuid_send(gen_random_uuid())
+        PLACING substring(int8send((extract(epoch FROM ts) * 1000)::bigint) FROM 3) FROM 1 FOR 6),
+        52, 1), 53, 1), 'hex')::uuid
+$$;
+
+INSERT INTO users (id, email, name, password, created_at)
+SELECT u, 'user' || u || '@example.com', 'User ' || u, 'x', timestamp '2025-01-01'
+FROM generate_series(1, 501) u;
+
+-- User 1 is the heavy user
+CREATE TEMP TABLE bench_conv AS
+SELECT CASE WHEN u = 1 AND c % 10 = 0 THEN gen_random_uuid() ELSE bench_uuid_v7(t) END AS id,
+       u AS user_id, t AS created_at, CASE WHEN u = 1 THEN 100 ELSE 50 END AS messages
+FROM (SELECT u, c, timestamp '2025-06-01' + (random() * 365 * 86400) * interval '1 second' AS t
+      FROM generate_series(1, 501) u, generate_series(1, 1000) c
+      WHERE c <= CASE WHEN u = 1 THEN 1000 ELSE 20 END) x;
+
+INSERT INTO conversations (id, user_id, title, created_at, updated_at)
+SELECT c.id, c.user_id,
+       left((SELECT string_agg(v.a[floor(exp(random() * ln(3716)))::int + 0 * g], ' ') FROM generate_series(1, 6 + 0 * c.messages) g), 60),
+       c.created_at, c.created_at + c.messages * interval '1 minute'
+FROM bench_conv c, (SELECT array_agg(word ORDER BY n) a FROM bench_vocab) v;
+
+-- Turns alternate user (10-40 words) and assistant (40-200 words); a log-uniform (Zipf-like) pick per word
+INSERT INTO messages (id, conversation_id, role, content, created_at)
+SELECT bench_uuid_v7(m.at), m.conversation_id, m.role,
+       (SELECT string_agg(v.a[floor(exp(random() * ln(3716)))::int + 0 * g], ' ') FROM generate_series(1, m.words) g),
+       m.at
+FROM (SELECT c.id AS conversation_id, c.created_at + k * interval '1 minute' AS at,
+             CASE WHEN k % 2 = 0 THEN 'user' ELSE 'assistant' END AS role,
+             CASE WHEN k % 2 = 0 THEN 10 + (random() * 30)::int ELSE 40 + (random() * 160)::int END AS words
+      FROM bench_conv c, generate_series(0, c.messages - 1) k) m,
+     (SELECT array_agg(word ORDER BY n) a FROM bench_vocab) v;
+
+RESET session_replication_role;
+ANALYZE;
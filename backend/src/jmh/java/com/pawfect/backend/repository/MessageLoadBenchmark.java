@@ -0,0 +1,95 @@
+package com.pawfect.backend.repository;
+
+import com.pawfect.backend.BackendApplication;
+import com.pawfect.backend.entity.ChatMessageEntity;
+import com.pawfect.backend.entity.Conversation;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a conversation's messages as managed entities (the detail read before projections) versus the
+ * column projection that replaced it, through the application's repositories against an embedded Postgres.
+ * Read gc.alloc.rate.norm from the GC profiler for the bytes each load allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageLoadBenchmark {
+
+    private static final String USER_TURN = "My 7 year old beagle has been vomiting since this morning and won't eat. Should I be worried?";
+    private static final String ASSISTANT_TURN = ("🐾 What Might Be Happening\nVomiting in dogs can have many causes, "
+            + "from eating something disagreeable to more serious issues. ").repeat(12);
+
+    @Param({"1000"})
+    public int messageCount;
+
+    private EmbeddedPostgres postgres;
+    private ConfigurableApplicationContext context;
+    private ChatMessageRepository chatMessageRepository;
+    private Conversation conversation;
+
+    @Setup
+    public void setUp() throws IOException {
+        postgres = EmbeddedPostgres.start();
+        // As arguments, so they win over application.properties and any DATABASE_URL in the environment
+        context = new SpringApplicationBuilder(BackendApplication.class).run(
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=",
+                "--server.port=0",
+                "--jwt.secret=benchmark-secret-benchmark-secret-benchmark-secret",
+                "--app.llm.provider=stub",
+                "--groq.api.key=unused",
+                "--groq.model=unused",
+                "--app.cors.allowed-origins=http://localhost",
+                "--logging.level.root=warn");
+
+        UUID conversationId = UUID.randomUUID();
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("INSERT INTO users (email, name, password, created_at) VALUES ('owner@pawfect.dev', 'Owner', 'x', now())");
+        jdbc.update("""
+                INSERT INTO conversations (id, user_id, title, created_at, updated_at)
+                SELECT ?, id, 'Vomiting beagle', now(), now() FROM users""", conversationId);
+        // Short user turns and long assistant replies, one second apart
+        jdbc.update("""
+                INSERT INTO messages (id, conversation_id, role, content, created_at)
+                SELECT gen_random_uuid(), ?,
+                       CASE WHEN n % 2 = 0 THEN 'user' ELSE 'assistant' END,
+                       CASE WHEN n % 2 = 0 THEN ? ELSE ? END,
+                       now() - make_interval(secs => ? - n)
+                FROM generate_series(0, ? - 1) n""",
+                conversationId, USER_TURN, ASSISTANT_TURN, messageCount, messageCount);
+        jdbc.execute("ANALYZE");
+
+        chatMessageRepository = context.getBean(ChatMessageRepository.class);
+        conversation = context.getBean(ConversationRepository.class).findById(conversationId.toString()).orElseThrow();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        postgres.close();
+    }
+
+    // Managed entities: each gets a persistence-context entry and its loaded state, until the transaction ends
+    @Benchmark
+    public List<ChatMessageEntity> entities() {
+        return chatMessageRepository.findByConversationOrderByCreatedAtAsc(conversation);
+    }
+
+    @Benchmark
+    public List<MessageView> projections() {
+        return chatMessageRepository.findViewsByConversationId(conversation.getId());
+    }
+}
@@ -0,0 +1,71 @@
+package com.pawfect.backend.security;
+
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token issue and per-request validation cost: the single-verify path with and without the verified-token
+ * cache, against the validate-then-extract sequence it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret";
+
+    private JwtUtil jwtUtil;
+    private JwtUtil uncachedJwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil(SECRET, 86_400_000L, 10_000, 300);
+        uncachedJwtUtil = new JwtUtil(SECRET, 86_400_000L, 10_000, 0); // entries expire as they are written
+        token = jwtUtil.generateToken("owner@pawfect.dev");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken("owner@pawfect.dev");
+    }
+
+    @Benchmark
+    public String validateCached() {
+        return jwtUtil.validateAndExtractEmail(token);
+    }
+
+    // Full signature verification and claims parse, as on a cache miss
+    @Benchmark
+    public String validateUncached() {
+        return uncachedJwtUtil.validateAndExtractEmail(token);
+    }
+
+    // What JwtAuthFilter did before: validateToken then extractEmail, each deriving the key, building a parser
+    // and verifying the signature
+    @Benchmark
+    public String validateThenExtractBaseline() {
+        return validateToken(token) ? extractEmail(token) : null;
+    }
+
+    private static boolean validateToken(String token) {
+        try {
+            Jwts.parser().verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes())).build().parseSignedClaims(token);
+            return true;
+        } catch (JwtException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String extractEmail(String token) {
+        return Jwts.parser().verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes())).build()
+                .parseSignedClaims(token).getPayload().getSubject();
+    }
+}
@@ -0,0 +1,59 @@
+package com.pawfect.backend.service;
+
+import com.pawfect.backend.dto.Dtos.ChatMessage;
+import com.pawfect.backend.repository.ConversationSummaryView;
+import com.pawfect.backend.repository.MessageView;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Synthetic conversations shaped like production traffic: short user turns, long assistant replies.
+ */
+final class BenchmarkData {
+
+    private static final String USER_TURN = "My 7 year old beagle has been vomiting since this morning and won't eat. Should I be worried?";
+    private static final String ASSISTANT_TURN = ("🐾 What Might Be Happening\nVomiting in dogs can have many causes, "
+            + "from eating something disagreeable to more serious issues. ").repeat(12);
+
+    private BenchmarkData() {
+    }
+
+    static List<ChatMessage> history(int size) {
+        List<ChatMessage> messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            messages.add(i % 2 == 0
+                    ? new ChatMessage("user", USER_TURN)
+                    : new ChatMessage("assistant", ASSISTANT_TURN));
+        }
+        return messages;
+    }
+
+    static ConversationSummaryView conversation() {
+        return new Summary(UUID.randomUUID().toString(), USER_TURN.substring(0, 60) + "...",
+                LocalDateTime.now().minusDays(1), LocalDateTime.now());
+    }
+
+    static List<MessageView> messages(ConversationSummaryView conversation, int size) {
+        List<MessageView> messages = new ArrayList<>(size);
+        LocalDateTime start = conversation.getCreatedAt();
+        for (int i = 0; i < size; i++) {
+            messages.add(new Message(UUID.randomUUID().toString(),
+                    i % 2 == 0 ? "user" : "assistant",
+                    i % 2 == 0 ? USER_TURN : ASSISTANT_TURN,
+                    start.plusSeconds(i)));
+        }
+        return messages;
+    }
+
+    // Stand-ins for the repository projections
+    private record Summary(String getId, String getTitle, LocalDateTime getCreatedAt, LocalDateTime getUpdatedAt)
+            implements ConversationSummaryView {
+    }
+
+    private record Message(String getId, String getRole, String getContent, LocalDateTime getCreatedAt)
+            implements MessageView {
+    }
+}
@@ -0,0 +1,67 @@
+package com.pawfect.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracting the reply from an upstream completion. {@code readTree} is the previous
+ * String + DOM approach, kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompletionParserBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private byte[] completion;
+    private String chunk;
+
+    @Setup
+    public void setUp() throws Exception {
+        String reply = BenchmarkData.history(2).get(1).getContent();
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("id", "chatcmpl-benchmark");
+        body.put("object", "chat.completion");
+        body.put("model", "benchmark-model");
+        ObjectNode choice = body.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.putObject("message").put("role", "assistant").put("content", reply);
+        choice.put("finish_reason", "stop");
+        body.putObject("usage").put("prompt_tokens", 1500).put("completion_tokens", 400).put("total_tokens", 1900);
+        completion = objectMapper.writeValueAsBytes(body);
+
+        chunk = "{\"id\":\"chatcmpl-benchmark\",\"object\":\"chat.completion.chunk\",\"choices\":"
+                + "[{\"index\":0,\"delta\":{\"content\":\" the vet\"},\"finish_reason\":null}]}";
+    }
+
+    @Benchmark
+    public String streamingCompletion() throws Exception {
+        return CompletionParser.parse(objectMapper.getFactory(), new ByteArrayInputStream(completion)).content();
+    }
+
+    @Benchmark
+    public String readTreeCompletion() throws Exception {
+        JsonNode json = objectMapper.readTree(new String(completion, StandardCharsets.UTF_8));
+        return json.path("choices").path(0).path("message").path("content").asText();
+    }
+
+    @Benchmark
+    public String streamingChunk() throws Exception {
+        return CompletionParser.parse(objectMapper.getFactory(), chunk).content();
+    }
+
+    @Benchmark
+    public String readTreeChunk() throws Exception {
+        return objectMapper.readTree(chunk).path("choices").path(0).path("delta").path("content").asText();
+    }
+}
@@ -0,0 +1,49 @@
+package com.pawfect.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.pawfect.backend.dto.Dtos.ConversationDetail;
+import com.pawfect.backend.repository.ConversationSummaryView;
+import com.pawfect.backend.repository.MessageView;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projection → DTO mapping and JSON serialization of large conversations, as served by GET /api/conversations/{id}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversationDetailBenchmark {
+
+    @Param({"100", "500", "1000"})
+    public int messageCount;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    private ConversationSummaryView conversation;
+    private List<MessageView> messages;
+    private ConversationDetail detail;
+
+    @Setup
+    public void setUp() {
+        conversation = BenchmarkData.conversation();
+        messages = BenchmarkData.messages(conversation, messageCount);
+        detail = ConversationService.toDetail(conversation, messages);
+    }
+
+    @Benchmark
+    public ConversationDetail mapToDetail() {
+        return ConversationService.toDetail(conversation, messages);
+    }
+
+    @Benchmark
+    public byte[] serializeDetail() throws Exception {
+        return objectMapper.writeValueAsBytes(detail);
+    }
+}
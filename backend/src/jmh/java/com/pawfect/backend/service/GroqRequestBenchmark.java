@@ -0,0 +1,70 @@
+package com.pawfect.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pawfect.backend.dto.Dtos.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.http.HttpRequest;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of encoding one upstream chat request (system prompt + history).
+ * {@code treeBody} is the previous ObjectNode-tree + writeValueAsString encoding, kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroqRequestBenchmark {
+
+    @Param({"5", "50", "500"})
+    public int historySize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private GroqService groqService;
+    private List<ChatMessage> history;
+
+    @Setup
+    public void setUp() throws Exception {
+        groqService = new GroqService(new CompletionCache(false, 1, 1, 1), null, null, new SimpleMeterRegistry()); // encoding only, nothing is sent
+        ReflectionTestUtils.setField(groqService, "groqApiUrl", "https://api.groq.com/openai/v1/chat/completions");
+        ReflectionTestUtils.setField(groqService, "groqApiKey", "benchmark-key");
+        ReflectionTestUtils.setField(groqService, "model", "benchmark-model");
+        ReflectionTestUtils.setField(groqService, "requestTimeoutMs", 60_000L);
+        groqService.init();
+        history = BenchmarkData.history(historySize);
+    }
+
+    @Benchmark
+    public HttpRequest buildRequest() throws Exception {
+        return groqService.buildRequest(history, false);
+    }
+
+    @Benchmark
+    public String treeBody() throws Exception {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("model", "benchmark-model");
+        body.put("max_tokens", 1024);
+        ArrayNode messagesArray = objectMapper.createArrayNode();
+        ObjectNode systemMsg = objectMapper.createObjectNode();
+        systemMsg.put("role", "system");
+        systemMsg.put("content", GroqService.SYSTEM_PROMPT);
+        messagesArray.add(systemMsg);
+        for (ChatMessage msg : history) {
+            ObjectNode msgNode = objectMapper.createObjectNode();
+            msgNode.put("role", msg.getRole());
+            msgNode.put("content", msg.getContent());
+            messagesArray.add(msgNode);
+        }
+        body.set("messages", messagesArray);
+        return objectMapper.writeValueAsString(body);
+    }
+}
@@ -0,0 +1,65 @@
+package com.pawfect.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread model for the chat pipeline. With {@code spring.threads.virtual.enabled=true} Tomcat
+ * already serves requests on virtual threads; the executors here follow the same switch.
+ */
+@Configuration
+public class ExecutionConfig {
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    // Relays upstream SSE chunks to clients; one thread per open stream. On platform threads at most
+    // max-concurrent streams run and queue-capacity wait for a thread; past that the executor rejects and
+    // /api/chat/stream answers 503 rather than an open stream that stays silent until it times out.
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService chatStreamExecutor(
+            @Value("${app.chat.stream.max-concurrent:64}") int maxConcurrent,
+            @Value("${app.chat.stream.queue-capacity:0}") int queueCapacity) {
+        if (virtualThreads) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0, TimeUnit.MILLISECONDS,
+                queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>(),
+                Thread.ofPlatform().name("chat-stream-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // BCrypt for logins and registrations (see BoundedPasswordEncoder). Platform threads on purpose:
+    // hashing is CPU-bound, and the pool size is what caps how many cores a login storm can take.
+    // Defaults to half the cores; work beyond the queue is rejected rather than buffered.
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor passwordHashingExecutor(
+            @Value("${app.auth.hashing.threads:0}") int threads,
+            @Value("${app.auth.hashing.queue-capacity:50}") int queueCapacity) {
+        int size = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("password-hash-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Rolling conversation summaries (ConversationSummarizer), off the request path. Mostly waiting on the
+    // model, so a couple of threads are plenty; when the queue is full a summary is skipped, not buffered.
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor summaryExecutor(
+            @Value("${app.chat.summary.threads:2}") int threads,
+            @Value("${app.chat.summary.queue-capacity:100}") int queueCapacity) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("conversation-summary-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
@@ -0,0 +1,129 @@
+package com.pawfect.backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.pawfect.backend.security.BoundedPasswordEncoder;
+import com.pawfect.backend.security.JwtUtil;
+import com.pawfect.backend.security.PrincipalCache;
+import com.pawfect.backend.service.ChatRateLimiter;
+import com.pawfect.backend.service.CompletionCache;
+import com.pawfect.backend.service.ConversationArchive;
+import com.pawfect.backend.service.ConversationContext;
+import com.pawfect.backend.service.LoginThrottle;
+import com.pawfect.backend.service.UpstreamAdmission;
+import com.pawfect.backend.service.UpstreamClient;
+import com.pawfect.backend.service.UpstreamGate;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Metrics that Spring Boot doesn't publish on its own: response serialization time, the in-memory
+ * caches, the upstream admission and rate limiting state, password hashing and the summary pool.
+ * Request timers live next to the code they time; everything under {@code pawfect.*} is published with
+ * histogram buckets (see {@code management.metrics.distribution.percentiles-histogram}).
+ */
+@Configuration
+public class MetricsConfig {
+
+    // Replaces Boot's default JSON converter so response bodies are timed as they are written
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(
+            ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        Timer timer = Timer.builder("pawfect.http.serialization")
+                .description("JSON serialization of response bodies")
+                .register(meterRegistry);
+        return new MappingJackson2HttpMessageConverter(objectMapper) {
+            @Override
+            protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+                    throws IOException, HttpMessageNotWritableException {
+                long start = System.nanoTime();
+                try {
+                    super.writeInternal(object, type, outputMessage);
+                } finally {
+                    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder chatPipelineMetrics(PrincipalCache principalCache, JwtUtil jwtUtil,
+                                           CompletionCache completionCache, ConversationContext conversationContext,
+                                           ConversationArchive conversationArchive,
+                                           UpstreamAdmission admission, UpstreamGate upstreamGate,
+                                           ChatRateLimiter chatRateLimiter,
+                                           UpstreamClient upstreamClient, BoundedPasswordEncoder passwordEncoder,
+                                           ThreadPoolExecutor passwordHashingExecutor, LoginThrottle loginThrottle,
+                                           ThreadPoolExecutor summaryExecutor) {
+        return registry -> {
+            bindCache(registry, "principals", principalCache, PrincipalCache::stats);
+            bindCache(registry, "verified-tokens", jwtUtil, JwtUtil::verifiedCacheStats);
+            bindCache(registry, "completions", completionCache, CompletionCache::stats);
+            bindCache(registry, "conversation-context", conversationContext, ConversationContext::stats);
+            bindCache(registry, "archived-messages", conversationArchive, ConversationArchive::stats);
+
+            Gauge.builder("pawfect.upstream.admission.queue", admission, UpstreamAdmission::queueDepth)
+                    .description("Calls waiting for upstream rate limit capacity")
+                    .register(registry);
+            Gauge.builder("pawfect.upstream.in-flight", upstreamGate, UpstreamGate::inFlight)
+                    .description("Model calls holding one of the upstream concurrency permits")
+                    .register(registry);
+            FunctionCounter.builder("pawfect.upstream.admission.admitted", admission, UpstreamAdmission::admittedCount)
+                    .register(registry);
+            FunctionCounter.builder("pawfect.upstream.admission.rejected", admission, UpstreamAdmission::rejectedCount)
+                    .description("Calls rejected with 429 because the queue was full or the wait ran out")
+                    .register(registry);
+            FunctionCounter.builder("pawfect.upstream.admission.wait", admission, a -> a.totalWaitTime().toNanos() / 1e9)
+                    .description("Cumulative time admitted calls spent queued")
+                    .baseUnit("seconds")
+                    .register(registry);
+            FunctionCounter.builder("pawfect.chat.rate-limit.rejected", chatRateLimiter, ChatRateLimiter::rejectedCount)
+                    .description("Chat turns rejected by the per-user limit")
+                    .register(registry);
+            Gauge.builder("pawfect.upstream.circuit.open", upstreamClient, client -> client.isCircuitOpen() ? 1 : 0)
+                    .description("1 while the upstream circuit breaker is failing fast")
+                    .register(registry);
+
+            Gauge.builder("pawfect.auth.hashing.queue", passwordHashingExecutor, executor -> executor.getQueue().size())
+                    .description("Password hashes waiting for a hashing thread")
+                    .register(registry);
+            FunctionCounter.builder("pawfect.auth.hashing.rejected", passwordEncoder, BoundedPasswordEncoder::rejectedCount)
+                    .description("Logins and registrations turned away with 503 because the hashing pool was full")
+                    .register(registry);
+            Gauge.builder("pawfect.chat.summary.queue", summaryExecutor, executor -> executor.getQueue().size())
+                    .description("Conversation summaries waiting for a summary thread")
+                    .register(registry);
+            FunctionCounter.builder("pawfect.auth.login.throttled", loginThrottle, LoginThrottle::throttledCount)
+                    .description("Login attempts refused after too many failures from the IP or for the email from it")
+                    .register(registry);
+        };
+    }
+
+    // Same meter names as Micrometer's own cache binders, read from Caffeine's recorded stats.
+    // Meters only hold their state object weakly, so the owning bean is passed rather than a lambda.
+    private static <T> void bindCache(MeterRegistry registry, String name, T owner, Function<T, CacheStats> stats) {
+        FunctionCounter.builder("cache.gets", owner, o -> stats.apply(o).hitCount())
+                .tags("cache", name, "result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", owner, o -> stats.apply(o).missCount())
+                .tags("cache", name, "result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", owner, o -> stats.apply(o).evictionCount())
+                .tags("cache", name)
+                .register(registry);
+    }
+}
@@ -0,0 +1,31 @@
+package com.pawfect.backend.config;
+
+import com.pawfect.backend.service.InMemoryRateLimitBackend;
+import com.pawfect.backend.service.RateLimitBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Limiter state, one backend per limiter. Each has its own key bound, so a flood of keys in one (e.g. chat
+ * users) can't evict another's (failed-login counts) and reset them early.
+ */
+@Configuration
+public class RateLimitConfig {
+
+    // Per-user chat budgets (ChatRateLimiter)
+    @Bean
+    public RateLimitBackend chatRateLimitBackend(
+            @Value("${app.chat.rate-limit.max-keys:100000}") long maxKeys,
+            @Value("${app.chat.rate-limit.idle-ttl-minutes:15}") long idleTtlMinutes) {
+        return new InMemoryRateLimitBackend(maxKeys, idleTtlMinutes);
+    }
+
+    // Failed logins per IP and per email (LoginThrottle); the idle TTL must outlast a bucket's refill time
+    @Bean
+    public RateLimitBackend loginThrottleBackend(
+            @Value("${app.auth.login-throttle.max-keys:100000}") long maxKeys,
+            @Value("${app.auth.login-throttle.idle-ttl-minutes:15}") long idleTtlMinutes) {
+        return new InMemoryRateLimitBackend(maxKeys, idleTtlMinutes);
+    }
+}
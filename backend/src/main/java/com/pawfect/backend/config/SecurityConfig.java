@@ -1,27 +1,39 @@
 package com.pawfect.backend.config;
 import org.springframework.beans.factory.annotation.Value;
 import com.pawfect.backend.repository.UserRepository;
+import com.pawfect.backend.security.AuthenticatedUser;
+import com.pawfect.backend.security.BoundedPasswordEncoder;
 import com.pawfect.backend.security.JwtAuthFilter;
+import com.pawfect.backend.security.PrincipalCache;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableWebSecurity
@@ -32,6 +44,13 @@ public class SecurityConfig {
     private final UserRepository userRepository;
     @Value("${app.cors.allowed-origins}") 
     private String allowedOrigins;
+    // Bearer token Prometheus must send to scrape metrics; scraping is refused while unset
+    @Value("${app.metrics.scrape-token:}")
+    private String scrapeToken;
+    @Value("${app.auth.bcrypt.cost:10}")
+    private int bcryptCost;
+    @Value("${app.auth.hashing.timeout-ms:5000}")
+    private long hashingTimeoutMs;
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         return http
@@ -40,13 +59,25 @@ public class SecurityConfig {
                 .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll() // allow preflight
+                        // SSE completion and error rendering of an already-authorized request
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                         .requestMatchers("/api/auth/**").permitAll()
+                        .requestMatchers(EndpointRequest.to("health")).permitAll()
+                        .requestMatchers(EndpointRequest.to("prometheus"))
+                        .access((authentication, context) -> new AuthorizationDecision(isScraper(context.getRequest())))
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class)
                 .build();
     }
 
+    private boolean isScraper(HttpServletRequest request) {
+        String header = request.getHeader("Authorization");
+        return !scrapeToken.isBlank() && header != null && MessageDigest.isEqual(
+                header.getBytes(StandardCharsets.UTF_8),
+                ("Bearer " + scrapeToken).getBytes(StandardCharsets.UTF_8));
+    }
+
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
         CorsConfiguration config = new CorsConfiguration();
@@ -62,17 +93,28 @@ public class SecurityConfig {
     @Bean
     public UserDetailsService userDetailsService() {
         return email -> userRepository.findByEmail(email)
-                .map(user -> org.springframework.security.core.userdetails.User
-                        .withUsername(user.getEmail())
-                        .password(user.getPassword())
-                        .authorities("ROLE_USER")
-                        .build())
+                .map(user -> new AuthenticatedUser(user.getId(), user.getEmail(), user.getPassword(),
+                        AuthorityUtils.createAuthorityList("ROLE_USER")))
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + email));
     }
 
+    // BCrypt at the configured cost, hashed on the bounded pool rather than the request thread
+    @Bean
+    public BoundedPasswordEncoder passwordEncoder(ThreadPoolExecutor passwordHashingExecutor) {
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(bcryptCost), passwordHashingExecutor,
+                Duration.ofMillis(hashingTimeoutMs));
+    }
+
+    // Called by the authentication provider after a successful login whose stored hash is below the
+    // configured cost, so raising the cost upgrades users as they sign in
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public UserDetailsPasswordService userDetailsPasswordService(PrincipalCache principalCache) {
+        return (user, newPassword) -> {
+            userRepository.updatePassword(user.getUsername(), newPassword);
+            principalCache.evict(user.getUsername());
+            return new AuthenticatedUser(((AuthenticatedUser) user).getId(), user.getUsername(), newPassword,
+                    user.getAuthorities());
+        };
     }
 
     @Bean
@@ -4,6 +4,7 @@ import com.pawfect.backend.dto.Dtos.RegisterRequest;
 import com.pawfect.backend.dto.Dtos.LoginRequest;
 import com.pawfect.backend.dto.Dtos.AuthResponse;
 import com.pawfect.backend.service.AuthService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -22,7 +23,9 @@ public class AuthController {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<AuthResponse> login(@Valid @RequestBody LoginRequest request) {
-        return ResponseEntity.ok(authService.login(request));
+    public ResponseEntity<AuthResponse> login(@Valid @RequestBody LoginRequest request,
+                                              HttpServletRequest servletRequest) {
+        // The client's address: server.forward-headers-strategy takes it from the proxy's X-Forwarded-For
+        return ResponseEntity.ok(authService.login(request, servletRequest.getRemoteAddr()));
     }
 }
\ No newline at end of file
@@ -1,54 +1,112 @@
 package com.pawfect.backend.controller;
 
 import com.pawfect.backend.dto.Dtos.*;
+import com.pawfect.backend.security.AuthenticatedUser;
+import com.pawfect.backend.service.ChatRateLimiter;
 import com.pawfect.backend.service.ConversationService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
+/**
+ * Chat turns and the user's conversations.
+ *
+ * <p>Paged endpoints all work the same way: {@code limit} sets the page size, and the body's {@code nextCursor}
+ * (null on the last page) goes back as {@code cursor} for the next page. Cursors are opaque.
+ */
 @RestController
 @RequestMapping("/api")
 @RequiredArgsConstructor
 public class ChatController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
     private final ConversationService conversationService;
+    private final ChatRateLimiter chatRateLimiter;
 
     // Send a message (creates conversation if conversationId is null)
     @PostMapping("/chat")
     public ResponseEntity<ChatResponse> chat(
             @RequestBody ChatRequest request,
-            @AuthenticationPrincipal UserDetails userDetails) {
+            @AuthenticationPrincipal AuthenticatedUser principal) {
+        chatRateLimiter.check(principal.getId());
         return ResponseEntity.ok(
-                conversationService.sendMessage(request, userDetails.getUsername()));
+                conversationService.sendMessage(request, principal.getId()));
+    }
+
+    // Same as /chat, but relays the reply as Server-Sent Events while it is generated
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(
+            @RequestBody ChatRequest request,
+            @AuthenticationPrincipal AuthenticatedUser principal) {
+        chatRateLimiter.check(principal.getId());
+        return conversationService.streamMessage(request, principal.getId());
     }
 
     // List all conversations for the current user
-    @GetMapping("/conversations")
+    @GetMapping(value = "/conversations", params = {"!limit", "!cursor"})
     public ResponseEntity<List<ConversationSummary>> getConversations(
-            @AuthenticationPrincipal UserDetails userDetails) {
+            @AuthenticationPrincipal AuthenticatedUser principal) {
+        return ResponseEntity.ok(
+                conversationService.getConversations(principal.getId()));
+    }
+
+    // One page of the list, newest first — used when `limit` or `cursor` is given
+    @GetMapping("/conversations")
+    public ResponseEntity<ConversationPage> getConversationPage(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @AuthenticationPrincipal AuthenticatedUser principal) {
         return ResponseEntity.ok(
-                conversationService.getConversations(userDetails.getUsername()));
+                conversationService.getConversations(
+                        principal.getId(), limit != null ? limit : DEFAULT_PAGE_SIZE, cursor));
+    }
+
+    // Full-text search over the user's conversations, best match first
+    @GetMapping("/conversations/search")
+    public ResponseEntity<ConversationSearchPage> searchConversations(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor,
+            @AuthenticationPrincipal AuthenticatedUser principal) {
+        return ResponseEntity.ok(conversationService.search(principal.getId(), q, limit, cursor));
     }
 
-    // Load a specific conversation with all messages
+    // Load a specific conversation — all messages, or the latest `limit` (scroll back with `cursor`)
     @GetMapping("/conversations/{id}")
     public ResponseEntity<ConversationDetail> getConversation(
             @PathVariable String id,
-            @AuthenticationPrincipal UserDetails userDetails) {
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @AuthenticationPrincipal AuthenticatedUser principal) {
+        if (limit == null && cursor == null) {
+            return ResponseEntity.ok(
+                    conversationService.getConversation(id, principal.getId()));
+        }
         return ResponseEntity.ok(
-                conversationService.getConversation(id, userDetails.getUsername()));
+                conversationService.getConversation(
+                        id, principal.getId(), limit != null ? limit : DEFAULT_PAGE_SIZE, cursor));
     }
 
     // Delete a conversation
     @DeleteMapping("/conversations/{id}")
     public ResponseEntity<Void> deleteConversation(
             @PathVariable String id,
-            @AuthenticationPrincipal UserDetails userDetails) {
-        conversationService.deleteConversation(id, userDetails.getUsername());
+            @AuthenticationPrincipal AuthenticatedUser principal) {
+        conversationService.deleteConversation(id, principal.getId());
+        return ResponseEntity.noContent().build();
+    }
+
+    // Delete all of the current user's conversations
+    @DeleteMapping("/conversations")
+    public ResponseEntity<Void> deleteAllConversations(
+            @AuthenticationPrincipal AuthenticatedUser principal) {
+        conversationService.deleteAllConversations(principal.getId());
         return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+}
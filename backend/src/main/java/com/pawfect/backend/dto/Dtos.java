@@ -1,5 +1,6 @@
 package com.pawfect.backend.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -62,7 +63,8 @@ public class Dtos {
     @AllArgsConstructor
     public static class ChatRequest {
         private String conversationId; // null = new conversation
-        private List<ChatMessage> messages;
+        private List<ChatMessage> messages; // full history, when the client tracks it
+        private String message; // just the new user message — the server assembles the history
     }
 
     @Data
@@ -97,5 +99,43 @@ public class Dtos {
         private List<ChatMessage> messages;
         private LocalDateTime createdAt;
         private LocalDateTime updatedAt;
+        // Set when older messages remain (paged loads only); left out otherwise, so unpaged loads keep their shape
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String nextCursor;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ConversationPage {
+        private List<ConversationSummary> conversations;
+        private String nextCursor; // null on the last page
+    }
+
+    // ── Search ────────────────────────────────────────
+
+    // Highlights are HTML-escaped text with matches wrapped in <mark>
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ConversationSearchResult {
+        private String id;
+        private String title;
+        private String titleHighlight;
+        private String messageId; // best-matching message; null when only the title matched
+        private String snippet;
+        private float rank;
+        private LocalDateTime updatedAt;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ConversationSearchPage {
+        private List<ConversationSearchResult> results;
+        private String nextCursor; // null on the last page
     }
-}
\ No newline at end of file
+}
@@ -2,24 +2,33 @@ package com.pawfect.backend.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.JavaType;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.type.SqlTypes;
 
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_conversation_created", columnList = "conversation_id, created_at, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class ChatMessageEntity {
 
+    // Stored as a native uuid; ids are time-ordered (UUIDv7) so inserts append to the index
     @Id
-    @Column(length = 36)
+    @JavaType(UuidStringJavaType.class)
+    @JdbcTypeCode(SqlTypes.UUID)
     private String id;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "conversation_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
     private Conversation conversation;
 
     @Column(nullable = false)
@@ -34,8 +43,10 @@ public class ChatMessageEntity {
     @PrePersist
     protected void onCreate() {
         if (this.id == null) {
-            this.id = UUID.randomUUID().toString();
+            this.id = TimeOrderedIds.nextString();
+        }
+        if (this.createdAt == null) {
+            createdAt = LocalDateTime.now(); // write-behind messages keep the time they were sent
         }
-        createdAt = LocalDateTime.now();
     }
 }
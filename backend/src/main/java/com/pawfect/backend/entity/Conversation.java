@@ -2,22 +2,28 @@ package com.pawfect.backend.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.JavaType;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
 
 @Entity
-@Table(name = "conversations")
+@Table(name = "conversations", indexes = {
+        @Index(name = "idx_conversations_user_updated", columnList = "user_id, updated_at DESC, id DESC")
+})
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class Conversation {
 
+    // Stored as a native uuid; ids are time-ordered (UUIDv7) so inserts append to the index
     @Id
-    @Column(length = 36)
+    @JavaType(UuidStringJavaType.class)
+    @JdbcTypeCode(SqlTypes.UUID)
     private String id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -27,7 +33,8 @@ public class Conversation {
     @Column(nullable = false)
     private String title;
 
-    @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, orphanRemoval = true)
+    // Read-only side: messages are deleted by the database with their conversation (ON DELETE CASCADE)
+    @OneToMany(mappedBy = "conversation")
     @OrderBy("createdAt ASC")
     @Builder.Default
     private List<ChatMessageEntity> messages = new ArrayList<>();
@@ -38,10 +45,28 @@ public class Conversation {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // When the messages were last moved to message_archives; only the archive job writes it
+    @Column(name = "archived_at", insertable = false, updatable = false)
+    private LocalDateTime archivedAt;
+
+    // Rolling summary of the first summaryMessageCount messages; only the summarizer writes these
+    @Column(name = "summary", columnDefinition = "TEXT", insertable = false, updatable = false)
+    private String summary;
+
+    @Column(name = "summary_message_count", insertable = false, updatable = false)
+    private int summaryMessageCount;
+
+    @Column(name = "summary_source_tokens", insertable = false, updatable = false)
+    private int summarySourceTokens;
+
+    // SHA-256 of the messages the summary covers, to check client-sent history against
+    @Column(name = "summary_prefix_hash", insertable = false, updatable = false)
+    private byte[] summaryPrefixHash;
+
     @PrePersist
     protected void onCreate() {
         if (this.id == null) {
-            this.id = UUID.randomUUID().toString();
+            this.id = TimeOrderedIds.nextString();
         }
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
@@ -0,0 +1,44 @@
+package com.pawfect.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JavaType;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * The archived messages of one conversation, packed into a single compressed payload
+ * (see ConversationArchive). Deleted by the database with its conversation.
+ */
+@Entity
+@Table(name = "message_archives")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageArchive {
+
+    @Id
+    @Column(name = "conversation_id")
+    @JavaType(UuidStringJavaType.class)
+    @JdbcTypeCode(SqlTypes.UUID)
+    private String conversationId;
+
+    @Column(name = "message_count", nullable = false)
+    private int messageCount;
+
+    // Space the archived rows took up in the messages table
+    @Column(name = "source_bytes", nullable = false)
+    private long sourceBytes;
+
+    @Column(name = "packed_bytes", nullable = false)
+    private long packedBytes;
+
+    @Column(nullable = false)
+    private byte[] payload;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+}
@@ -0,0 +1,32 @@
+package com.pawfect.backend.entity;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UUIDv7 (RFC 9562) ids: a 48-bit Unix millisecond timestamp up front, so new rows land at the right-hand
+ * edge of the primary key index instead of at random pages. The 12 {@code rand_a} bits are a per-millisecond
+ * counter, which keeps ids generated by this process strictly increasing; the remaining 62 bits are random.
+ */
+public final class TimeOrderedIds {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // (unix millis << 12) | counter of the last id handed out
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private TimeOrderedIds() {
+    }
+
+    public static UUID next() {
+        long stamp = LAST.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis() << 12));
+        long msb = (stamp >>> 12) << 16 | 0x7000L | (stamp & 0xFFFL);
+        long lsb = RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    public static String nextString() {
+        return next().toString();
+    }
+}
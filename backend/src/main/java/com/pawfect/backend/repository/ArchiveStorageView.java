@@ -0,0 +1,15 @@
+package com.pawfect.backend.repository;
+
+/**
+ * Totals over message_archives: how much the archived messages took up as rows, and how much they take now.
+ */
+public interface ArchiveStorageView {
+
+    long getConversations();
+
+    long getMessages();
+
+    long getSourceBytes();
+
+    long getPackedBytes();
+}
@@ -2,13 +2,67 @@ package com.pawfect.backend.repository;
 
 import com.pawfect.backend.entity.ChatMessageEntity;
 import com.pawfect.backend.entity.Conversation;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessageEntity, String> {
 
     List<ChatMessageEntity> findByConversationOrderByCreatedAtAsc(Conversation conversation);
-}
\ No newline at end of file
+
+    // ── Read-only projections (no entity hydration; constructor expressions, not interface proxies) ──
+
+    @Query("""
+            SELECT new com.pawfect.backend.repository.MessageRow(m.id, m.role, m.content, m.createdAt)
+            FROM ChatMessageEntity m
+            WHERE m.conversation.id = :conversationId
+            ORDER BY m.createdAt ASC, m.id ASC""")
+    List<MessageView> findViewsByConversationId(@Param("conversationId") String conversationId);
+
+    // Keyset pages over (created_at, id), newest first — callers reverse for display
+    @Query("""
+            SELECT new com.pawfect.backend.repository.MessageRow(m.id, m.role, m.content, m.createdAt)
+            FROM ChatMessageEntity m
+            WHERE m.conversation.id = :conversationId
+            ORDER BY m.createdAt DESC, m.id DESC""")
+    List<MessageView> findLatest(@Param("conversationId") String conversationId, Limit limit);
+
+    @Query("""
+            SELECT new com.pawfect.backend.repository.MessageRow(m.id, m.role, m.content, m.createdAt)
+            FROM ChatMessageEntity m
+            WHERE m.conversation.id = :conversationId
+              AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id))
+            ORDER BY m.createdAt DESC, m.id DESC""")
+    List<MessageView> findLatestBefore(@Param("conversationId") String conversationId,
+                                       @Param("createdAt") LocalDateTime createdAt,
+                                       @Param("id") String id, Limit limit);
+
+    // Takes back the user message of a turn whose model call failed
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ChatMessageEntity m WHERE m.id IN :ids")
+    int deleteAllByIds(@Param("ids") List<String> ids);
+
+    // ── Archiving ──
+
+    // Deletes the conversation's messages and returns the space their rows took up (after TOAST compression).
+    // A query rather than @Modifying: the DELETE runs inside a CTE that returns the total. That also means it
+    // can't open a read-write transaction of its own, so it only runs inside the caller's (ConversationArchive).
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Query(value = """
+            WITH deleted AS (
+                DELETE FROM messages m WHERE m.conversation_id = CAST(:conversationId AS uuid)
+                RETURNING pg_column_size(m.*) AS size
+            )
+            SELECT coalesce(sum(size), 0) FROM deleted""", nativeQuery = true)
+    long deleteAllInConversation(@Param("conversationId") String conversationId);
+}
@@ -0,0 +1,11 @@
+package com.pawfect.backend.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Summary columns plus what a detail load needs to know: whether older messages sit in the archive.
+ */
+public interface ConversationDetailView extends ConversationSummaryView {
+
+    LocalDateTime getArchivedAt();
+}
@@ -0,0 +1,18 @@
+package com.pawfect.backend.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * What assembling a conversation's prompt history needs besides its messages: where older messages
+ * are archived, and the rolling summary that stands in for the first summaryMessageCount of them.
+ */
+public interface ConversationHistoryView {
+
+    LocalDateTime getArchivedAt();
+
+    String getSummary();
+
+    int getSummaryMessageCount();
+
+    int getSummarySourceTokens();
+}
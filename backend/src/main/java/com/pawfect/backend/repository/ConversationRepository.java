@@ -2,9 +2,15 @@ package com.pawfect.backend.repository;
 
 import com.pawfect.backend.entity.Conversation;
 import com.pawfect.backend.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,4 +20,177 @@ public interface ConversationRepository extends JpaRepository<Conversation, Stri
     List<Conversation> findByUserOrderByUpdatedAtDesc(User user);
 
     Optional<Conversation> findByIdAndUser(String id, User user);
+
+    // ── Read-only projections (no entity hydration) ──
+
+    List<ConversationSummaryView> findSummariesByUserOrderByUpdatedAtDesc(User user);
+
+    Optional<ConversationDetailView> findDetailByIdAndUser(String id, User user);
+
+    Optional<ConversationHistoryView> findHistoryById(String id);
+
+    // Keyset pages over (updated_at, id), newest first
+    @Query("""
+            SELECT c.id AS id, c.title AS title, c.createdAt AS createdAt, c.updatedAt AS updatedAt
+            FROM Conversation c
+            WHERE c.user = :user
+            ORDER BY c.updatedAt DESC, c.id DESC""")
+    List<ConversationSummaryView> findFirstPage(@Param("user") User user, Limit limit);
+
+    @Query("""
+            SELECT c.id AS id, c.title AS title, c.createdAt AS createdAt, c.updatedAt AS updatedAt
+            FROM Conversation c
+            WHERE c.user = :user
+              AND (c.updatedAt < :updatedAt OR (c.updatedAt = :updatedAt AND c.id < :id))
+            ORDER BY c.updatedAt DESC, c.id DESC""")
+    List<ConversationSummaryView> findPageBefore(@Param("user") User user, @Param("updatedAt") LocalDateTime updatedAt,
+                                      @Param("id") String id, Limit limit);
+
+    // ── Full-text search (V5__conversation_search.sql, V9__conversation_search_chunks.sql) ──
+    //
+    // Matches the query as written against each chunk of a conversation's search document, but ranks on any
+    // of its words: ranking an AND compares every pair of term positions, which gets slow on long documents.
+    // Only the user's newest `candidates` chunks holding every word are checked and ranked, so a common word
+    // costs the same for a long history as for a short one; phrases and exclusions are checked on those
+    // (`any_order` is the query without them, which the index answers exactly). A query that only excludes
+    // words matches nothing rather than reading every chunk. The user id goes in as a subquery so the plan
+    // doesn't depend on how many chunks that user has: for a heavy user the planner would otherwise filter
+    // their rows after the index scan instead of looking them up in it.
+    //
+    // A conversation ranks by its best chunk. The snippet quotes the message of that chunk with the most
+    // query words close together, found from the word positions (no message text is parsed); the text comes
+    // from messages, or is null when the message is archived (messageId still says which one to quote).
+    // Headlines are only built for the page returned.
+
+    @Query(value = """
+            WITH terms AS (
+                SELECT t.query, t.any_order, t.words,
+                       (SELECT to_tsquery('simple', string_agg(quote_literal(w), ' | ')) FROM unnest(t.words) w) AS any_word,
+                       'StartSel=' || chr(2) || ', StopSel=' || chr(3) AS marks
+                FROM (SELECT websearch_to_tsquery('english', :text) AS query,
+                             CAST(regexp_replace(querytree(websearch_to_tsquery('english', :text)), '<(-|[0-9]+)>', '&', 'g')
+                                 AS tsquery) AS any_order,
+                             tsvector_to_array(to_tsvector('simple', querytree(websearch_to_tsquery('english', :text))))
+                                 AS words) t
+            ),
+            matches AS (
+                SELECT s.conversation_id, s.search_vector, s.message_ids, s.message_ends
+                FROM conversation_search s
+                WHERE s.user_id = (SELECT CAST(:userId AS bigint))
+                  AND s.search_vector @@ CAST(regexp_replace(querytree(websearch_to_tsquery('english', :text)),
+                                                             '<(-|[0-9]+)>', '&', 'g') AS tsquery)
+                  AND querytree(websearch_to_tsquery('english', :text)) <> 'T'
+                ORDER BY s.messages_to DESC NULLS LAST
+                LIMIT :candidates
+            ),
+            best AS (
+                SELECT DISTINCT ON (m.conversation_id) m.conversation_id, m.search_vector, m.message_ids,
+                       m.message_ends, ts_rank(m.search_vector, terms.any_word, 1) AS rank
+                FROM matches m, terms
+                WHERE terms.any_order = terms.query OR m.search_vector @@ terms.query
+                ORDER BY m.conversation_id, rank DESC
+            ),
+            ranked AS (
+                SELECT c.id, c.title, c.updated_at, c.archived_at, b.rank, b.search_vector, b.message_ids,
+                       b.message_ends
+                FROM best b
+                JOIN conversations c ON c.id = b.conversation_id
+                ORDER BY b.rank DESC, c.updated_at DESC, c.id DESC
+                LIMIT :limit OFFSET :offset
+            )
+            SELECT CAST(r.id AS text) AS "id", r.title AS "title", r.updated_at AS "updatedAt",
+                   r.archived_at AS "archivedAt", r.rank AS "rank",
+                   ts_headline('english', r.title, terms.query, 'HighlightAll=true, ' || terms.marks) AS "titleHighlight",
+                   CAST(hit.id AS text) AS "messageId",
+                   ts_headline('english', m.content, terms.any_word,
+                               'MaxFragments=2, MinWords=8, MaxWords=20, ' || terms.marks) AS "snippet"
+            FROM ranked r
+            CROSS JOIN terms
+            LEFT JOIN LATERAL (
+                SELECT r.message_ids[h.message] AS id
+                FROM (SELECT width_bucket(p - 1, r.message_ends) AS message, u.lexeme,
+                             p - lag(p) OVER w <= 2 OR lead(p) OVER w - p <= 2 AS near
+                      FROM unnest(ts_filter(setweight(ts_filter(r.search_vector, CAST(ARRAY['d'] AS "char"[])),
+                                                      'b', terms.words),
+                                            CAST(ARRAY['b'] AS "char"[]))) u,
+                           unnest(u.positions) p
+                      WINDOW w AS (ORDER BY p)) h
+                GROUP BY h.message
+                ORDER BY count(*) FILTER (WHERE h.near) DESC, count(DISTINCT h.lexeme) DESC, count(*) DESC,
+                         h.message DESC
+                LIMIT 1
+            ) hit ON true
+            LEFT JOIN messages m ON m.id = hit.id
+            ORDER BY r.rank DESC, r.updated_at DESC, r.id DESC""", nativeQuery = true)
+    List<ConversationSearchView> search(@Param("userId") Long userId, @Param("text") String text,
+                                        @Param("candidates") int candidates,
+                                        @Param("limit") int limit, @Param("offset") int offset);
+
+    // The snippet for a search hit in an archived message, headlined as in search()
+    @Query(value = """
+            SELECT ts_headline('english', :content,
+                               (SELECT to_tsquery('simple', string_agg(quote_literal(w), ' | '))
+                                FROM unnest(tsvector_to_array(to_tsvector('simple',
+                                    querytree(websearch_to_tsquery('english', :text))))) w),
+                               'MaxFragments=2, MinWords=8, MaxWords=20, StartSel=' || chr(2) || ', StopSel=' || chr(3))""",
+            nativeQuery = true)
+    String searchSnippet(@Param("content") String content, @Param("text") String text);
+
+    // ── Archiving (V6__message_archive.sql) ──
+    //
+    // A conversation is due once it is older than the cutoff and has messages newer than its last archiving.
+    // The predicate matches idx_conversations_archivable, so candidates come straight from that index.
+
+    @Query(value = """
+            SELECT CAST(c.id AS text) FROM conversations c
+            WHERE c.updated_at < :cutoff AND (c.archived_at IS NULL OR c.archived_at < c.updated_at)
+            ORDER BY c.updated_at
+            LIMIT :limit""", nativeQuery = true)
+    List<String> findArchivable(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    // Locks a conversation that is still due. The row lock holds off new messages (their foreign key check
+    // needs a share lock) and touches until commit; rows another archiver already holds are skipped.
+    @Query(value = """
+            SELECT CAST(c.id AS text) FROM conversations c
+            WHERE c.id = CAST(:id AS uuid)
+              AND c.updated_at < :cutoff AND (c.archived_at IS NULL OR c.archived_at < c.updated_at)
+            FOR UPDATE SKIP LOCKED""", nativeQuery = true)
+    Optional<String> lockArchivable(@Param("id") String id, @Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Query(value = "UPDATE conversations SET archived_at = :archivedAt WHERE id = CAST(:id AS uuid)", nativeQuery = true)
+    int markArchived(@Param("id") String id, @Param("archivedAt") LocalDateTime archivedAt);
+
+    // ── Rolling summary (V7__conversation_summary.sql, V8__conversation_summary_prefix.sql) ──
+
+    // Only applies if no other summary landed since `expectedCount` was read
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE conversations
+            SET summary = :summary, summary_message_count = :messageCount, summary_source_tokens = :sourceTokens,
+                summary_prefix_hash = :prefixHash
+            WHERE id = CAST(:id AS uuid) AND summary_message_count = :expectedCount""", nativeQuery = true)
+    int updateSummary(@Param("id") String id, @Param("summary") String summary,
+                      @Param("messageCount") int messageCount, @Param("sourceTokens") int sourceTokens,
+                      @Param("prefixHash") byte[] prefixHash, @Param("expectedCount") int expectedCount);
+
+    // ── Bulk deletes (messages go with their conversation via ON DELETE CASCADE) ──
+
+    @Modifying
+    @Query("DELETE FROM Conversation c WHERE c.id = :id AND c.user = :user")
+    int deleteByIdAndUser(@Param("id") String id, @Param("user") User user);
+
+    @Query("SELECT c.id FROM Conversation c WHERE c.user = :user ORDER BY c.id")
+    List<String> findIdsByUser(@Param("user") User user, Limit limit);
+
+    @Modifying
+    @Query("DELETE FROM Conversation c WHERE c.id IN :ids")
+    int deleteAllByIds(@Param("ids") List<String> ids);
+
+    // Bumps updatedAt without loading or merging the conversation (and its messages collection)
+    @Transactional
+    @Modifying
+    @Query("UPDATE Conversation c SET c.updatedAt = :updatedAt WHERE c.id = :id")
+    int touch(@Param("id") String id, @Param("updatedAt") LocalDateTime updatedAt);
 }
@@ -0,0 +1,27 @@
+package com.pawfect.backend.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * One conversation matching a search, with the best-matching message as the snippet. Highlighted
+ * terms in {@code titleHighlight} and {@code snippet} are wrapped in U+0002 / U+0003. The snippet is
+ * null when that message has been archived; {@code messageId} still names it.
+ */
+public interface ConversationSearchView {
+
+    String getId();
+
+    String getTitle();
+
+    LocalDateTime getUpdatedAt();
+
+    LocalDateTime getArchivedAt();
+
+    Float getRank();
+
+    String getTitleHighlight();
+
+    String getMessageId();
+
+    String getSnippet();
+}
@@ -0,0 +1,17 @@
+package com.pawfect.backend.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of the conversation columns shown in lists and detail headers.
+ */
+public interface ConversationSummaryView {
+
+    String getId();
+
+    String getTitle();
+
+    LocalDateTime getCreatedAt();
+
+    LocalDateTime getUpdatedAt();
+}
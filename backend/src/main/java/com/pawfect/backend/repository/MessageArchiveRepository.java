@@ -0,0 +1,16 @@
+package com.pawfect.backend.repository;
+
+import com.pawfect.backend.entity.MessageArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MessageArchiveRepository extends JpaRepository<MessageArchive, String> {
+
+    @Query("""
+            SELECT count(a) AS conversations, coalesce(sum(a.messageCount), 0) AS messages,
+                   coalesce(sum(a.sourceBytes), 0) AS sourceBytes, coalesce(sum(a.packedBytes), 0) AS packedBytes
+            FROM MessageArchive a""")
+    ArchiveStorageView storageTotals();
+}
@@ -0,0 +1,19 @@
+package com.pawfect.backend.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A {@link MessageView} built straight from a JPQL constructor expression: one plain object per row, where an
+ * interface projection would wrap each row in a tuple map and a proxy.
+ */
+@Getter
+@AllArgsConstructor
+public final class MessageRow implements MessageView {
+    private final String id;
+    private final String role;
+    private final String content;
+    private final LocalDateTime createdAt;
+}
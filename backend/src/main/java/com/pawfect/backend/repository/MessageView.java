@@ -0,0 +1,17 @@
+package com.pawfect.backend.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a message; id and createdAt double as the paging key.
+ */
+public interface MessageView {
+
+    String getId();
+
+    String getRole();
+
+    String getContent();
+
+    LocalDateTime getCreatedAt();
+}
@@ -1,15 +1,15 @@
 package com.pawfect.backend.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.context.ApplicationContext;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -20,24 +20,37 @@ import java.io.IOException;
 public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
-    private final ApplicationContext applicationContext;
+    private final PrincipalCache principalCache;
+    private final MeterRegistry meterRegistry;
+
+    private Timer authTimer;
+
+    @PostConstruct
+    void init() {
+        authTimer = Timer.builder("pawfect.auth.filter")
+                .description("Token verification and principal resolution per request")
+                .register(meterRegistry);
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
         String authHeader = request.getHeader("Authorization");
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            String token = authHeader.substring(7);
-            if (jwtUtil.validateToken(token)) {
-                String email = jwtUtil.extractEmail(token);
-                UserDetailsService userDetailsService = applicationContext.getBean(UserDetailsService.class);
-                UserDetails userDetails = userDetailsService.loadUserByUsername(email);
-                UsernamePasswordAuthenticationToken auth =
-                        new UsernamePasswordAuthenticationToken(
-                                userDetails, null, userDetails.getAuthorities());
-                SecurityContextHolder.getContext().setAuthentication(auth);
-            }
+            authTimer.record(() -> authenticate(authHeader));
         }
         filterChain.doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    private void authenticate(String authHeader) {
+        String token = authHeader.substring(7);
+        String email = jwtUtil.validateAndExtractEmail(token);
+        if (email != null) {
+            AuthenticatedUser principal = principalCache.get(email);
+            UsernamePasswordAuthenticationToken auth =
+                    new UsernamePasswordAuthenticationToken(
+                            principal, null, principal.getAuthorities());
+            SecurityContextHolder.getContext().setAuthentication(auth);
+        }
+    }
+}
@@ -1,24 +1,49 @@
 package com.pawfect.backend.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Date;
 
 @Component
 public class JwtUtil {
 
-    @Value("${jwt.secret}")
-    private String secret;
+    private final SecretKey key;
+    private final JwtParser parser;
+    private final long expiration;
 
-    @Value("${jwt.expiration}")
-    private long expiration;
+    // Tokens whose signature has already been checked, until they expire (or the TTL runs out)
+    private final Cache<String, VerifiedToken> verifiedTokens;
 
-    private SecretKey getKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+    public JwtUtil(@Value("${jwt.secret}") String secret,
+                   @Value("${jwt.expiration}") long expiration,
+                   @Value("${jwt.verified-cache.size:10000}") long verifiedCacheSize,
+                   @Value("${jwt.verified-cache.ttl-seconds:300}") long verifiedCacheTtlSeconds) {
+        this.key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser().verifyWith(key).build();
+        this.expiration = expiration;
+        Duration maxTtl = Duration.ofSeconds(verifiedCacheTtlSeconds);
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheSize)
+                .expireAfter(Expiry.creating((String token, VerifiedToken verified) -> {
+                    Duration remaining = Duration.between(Instant.now(), verified.expiresAt());
+                    if (remaining.isNegative()) {
+                        return Duration.ZERO;
+                    }
+                    return remaining.compareTo(maxTtl) < 0 ? remaining : maxTtl;
+                }))
+                .recordStats()
+                .build();
     }
 
     public String generateToken(String email) {
@@ -26,21 +51,36 @@ public class JwtUtil {
                 .subject(email)
                 .issuedAt(new Date())
                 .expiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getKey())
+                .signWith(key)
                 .compact();
     }
 
-    public String extractEmail(String token) {
-        return Jwts.parser().verifyWith(getKey()).build()
-                .parseSignedClaims(token).getPayload().getSubject();
-    }
-
-    public boolean validateToken(String token) {
+    /**
+     * Verifies the token (at most once while it stays cached) and returns its subject,
+     * or {@code null} if the token is invalid or expired.
+     */
+    public String validateAndExtractEmail(String token) {
+        VerifiedToken cached = verifiedTokens.getIfPresent(token);
+        if (cached != null && cached.expiresAt().isAfter(Instant.now())) {
+            return cached.email();
+        }
         try {
-            Jwts.parser().verifyWith(getKey()).build().parseSignedClaims(token);
-            return true;
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            Date exp = claims.getExpiration();
+            if (exp != null) {
+                verifiedTokens.put(token, new VerifiedToken(claims.getSubject(), exp.toInstant()));
+            }
+            return claims.getSubject();
         } catch (JwtException | IllegalArgumentException e) {
-            return false;
+            return null;
         }
     }
+
+    // Each hit is one signature check skipped
+    public CacheStats verifiedCacheStats() {
+        return verifiedTokens.stats();
+    }
+
+    private record VerifiedToken(String email, Instant expiresAt) {
+    }
 }
@@ -0,0 +1,66 @@
+package com.pawfect.backend.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.pawfect.backend.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Resolved principals keyed by token subject (email), so authenticated requests
+ * skip the per-request user lookup. Entries hold no password hash.
+ */
+@Component
+public class PrincipalCache {
+
+    private final UserRepository userRepository;
+    private final Cache<String, AuthenticatedUser> principals;
+    private final Timer lookupTimer;
+
+    public PrincipalCache(UserRepository userRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${app.auth.principal-cache.size:10000}") long size,
+                          @Value("${app.auth.principal-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.lookupTimer = Timer.builder("pawfect.auth.user.lookup")
+                .description("User lookups on principal cache misses")
+                .register(meterRegistry);
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    // The lookup runs outside the cache: inside Cache.get it would block under a map lock, which pins a virtual
+    // thread to its carrier (JDK 21) and can leave no carrier for the threads that would free a DB connection
+    public AuthenticatedUser get(String email) {
+        AuthenticatedUser cached = principals.getIfPresent(email);
+        if (cached != null) {
+            return cached;
+        }
+        AuthenticatedUser loaded = lookupTimer.record(() -> userRepository.findByEmail(email))
+                .map(user -> new AuthenticatedUser(user.getId(), user.getEmail(), "",
+                        AuthorityUtils.createAuthorityList("ROLE_USER")))
+                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + email));
+        principals.put(email, loaded);
+        return loaded;
+    }
+
+    // Call whenever a user row changes so the next request re-reads it
+    public void evict(String email) {
+        principals.invalidate(email);
+    }
+
+    // Each hit is one user lookup the filter didn't make
+    public CacheStats stats() {
+        return principals.stats();
+    }
+}
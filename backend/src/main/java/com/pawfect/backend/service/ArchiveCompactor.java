@@ -0,0 +1,177 @@
+package com.pawfect.backend.service;
+
+import com.pawfect.backend.repository.ArchiveStorageView;
+import com.pawfect.backend.repository.ConversationRepository;
+import com.pawfect.backend.repository.MessageArchiveRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job that moves conversations untouched for {@code after-days} into the archive
+ * ({@code app.chat.archive.enabled}). Each pass takes the due conversations oldest first, one short
+ * transaction each, paced to {@code max-messages-per-second} so it doesn't compete with chat traffic for
+ * the database. Several instances can run it at once: a conversation another one holds is skipped.
+ * After a pass that archived anything, the archive's totals are logged and published as gauges.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ArchiveCompactor {
+
+    private final ConversationArchive archive;
+    private final ConversationRepository conversationRepository;
+    private final MessageArchiveRepository messageArchiveRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.chat.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.chat.archive.after-days:30}")
+    private int afterDays;
+
+    @Value("${app.chat.archive.initial-delay-seconds:60}")
+    private long initialDelaySeconds;
+
+    @Value("${app.chat.archive.interval-minutes:60}")
+    private long intervalMinutes;
+
+    @Value("${app.chat.archive.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.chat.archive.max-messages-per-second:500}")
+    private int maxMessagesPerSecond;
+
+    private ScheduledExecutorService scheduler;
+    private volatile ArchiveStorageView totals;
+
+    private Timer passTimer;
+    private Counter conversations;
+    private Counter messages;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        passTimer = Timer.builder("pawfect.archive.pass")
+                .description("Archive compaction passes")
+                .register(meterRegistry);
+        conversations = Counter.builder("pawfect.archive.conversations")
+                .description("Conversations whose messages were moved to the archive")
+                .register(meterRegistry);
+        messages = Counter.builder("pawfect.archive.messages")
+                .description("Messages moved to the archive")
+                .register(meterRegistry);
+        Gauge.builder("pawfect.archive.source", this, c -> c.totals == null ? Double.NaN : c.totals.getSourceBytes())
+                .description("Space the archived messages took up as rows in messages")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("pawfect.archive.packed", this, c -> c.totals == null ? Double.NaN : c.totals.getPackedBytes())
+                .description("Space the archived messages take up packed in message_archives")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("archive-compactor").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::runPass, initialDelaySeconds, TimeUnit.MINUTES.toSeconds(intervalMinutes),
+                TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdownNow(); // each conversation is its own transaction, so stopping mid-pass is safe
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private void runPass() {
+        long start = System.nanoTime();
+        try {
+            compact();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Archive pass failed", e); // thrown out of the task, it would cancel every later pass
+        } finally {
+            passTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Archives due conversations in batches until none are left; ones that can't be archived right now
+    // (held by a chat turn or another instance, or failing) are left for the next pass
+    void compact() throws InterruptedException {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(afterDays);
+        long start = System.nanoTime();
+        Set<String> skipped = new HashSet<>();
+        int archivedConversations = 0;
+        long archivedMessages = 0;
+        while (true) {
+            List<String> due = conversationRepository.findArchivable(cutoff, batchSize + skipped.size());
+            due = due.stream().filter(id -> !skipped.contains(id)).toList();
+            if (due.isEmpty()) {
+                break;
+            }
+            for (String id : due) {
+                long began = System.nanoTime();
+                ConversationArchive.Archived archived;
+                try {
+                    archived = archive.archive(id, cutoff);
+                } catch (RuntimeException e) {
+                    log.warn("Could not archive conversation {}", id, e);
+                    archived = null;
+                }
+                if (archived == null) {
+                    skipped.add(id);
+                    continue;
+                }
+                archivedConversations++;
+                archivedMessages += archived.messages();
+                conversations.increment();
+                messages.increment(archived.messages());
+                pace(archived.messages(), began);
+            }
+        }
+
+        totals = messageArchiveRepository.storageTotals();
+        if (archivedConversations > 0) {
+            log.info("Archived {} conversation(s), {} message(s) in {} s; the archive holds {} conversation(s), "
+                            + "{} message(s): {} kB of message rows packed into {} kB ({}% saved)",
+                    archivedConversations, archivedMessages, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start),
+                    totals.getConversations(), totals.getMessages(), totals.getSourceBytes() / 1024,
+                    totals.getPackedBytes() / 1024, savedPercent(totals));
+        }
+    }
+
+    // Sleeps off whatever is left of the time `messages` may take at the configured rate
+    private void pace(int messages, long startNanos) throws InterruptedException {
+        long budget = TimeUnit.SECONDS.toNanos(messages) / maxMessagesPerSecond;
+        long remaining = budget - (System.nanoTime() - startNanos);
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    private static long savedPercent(ArchiveStorageView totals) {
+        if (totals.getSourceBytes() == 0) {
+            return 0;
+        }
+        return 100 - totals.getPackedBytes() * 100 / totals.getSourceBytes();
+    }
+}
@@ -6,8 +6,10 @@ import com.pawfect.backend.dto.Dtos.AuthResponse;
 import com.pawfect.backend.entity.User;
 import com.pawfect.backend.repository.UserRepository;
 import com.pawfect.backend.security.JwtUtil;
+import com.pawfect.backend.security.PrincipalCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -20,6 +22,8 @@ public class AuthService {
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
     private final AuthenticationManager authenticationManager;
+    private final PrincipalCache principalCache;
+    private final LoginThrottle loginThrottle;
 
     public AuthResponse register(RegisterRequest request) {
         if (userRepository.existsByEmail(request.getEmail())) {
@@ -31,6 +35,7 @@ public class AuthService {
                 .password(passwordEncoder.encode(request.getPassword()))
                 .build();
         userRepository.save(user);
+        principalCache.evict(user.getEmail());
         String token = jwtUtil.generateToken(user.getEmail());
         return AuthResponse.builder()
                 .token(token)
@@ -39,10 +44,21 @@ public class AuthService {
                 .build();
     }
 
-    public AuthResponse login(LoginRequest request) {
-        authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(request.getEmail(), request.getPassword())
-        );
+    // Throttled per client IP and per email from that IP before any hashing; BCrypt runs on the bounded hashing pool, and a
+    // hash below the configured cost is upgraded on success (see SecurityConfig)
+    public AuthResponse login(LoginRequest request, String clientIp) {
+        loginThrottle.acquire(clientIp, request.getEmail());
+        try {
+            authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(request.getEmail(), request.getPassword())
+            );
+        } catch (BadCredentialsException e) {
+            throw e; // counts as a failed attempt
+        } catch (RuntimeException e) {
+            loginThrottle.release(clientIp, request.getEmail());
+            throw e;
+        }
+        loginThrottle.release(clientIp, request.getEmail());
         User user = userRepository.findByEmail(request.getEmail())
                 .orElseThrow(() -> new RuntimeException("User not found"));
         String token = jwtUtil.generateToken(user.getEmail());
@@ -0,0 +1,49 @@
+package com.pawfect.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-user limit on chat turns, so one account can't use up the shared upstream quota.
+ * Allows a short burst, then {@code app.chat.rate-limit.requests-per-minute}.
+ */
+@Component
+public class ChatRateLimiter {
+
+    private final RateLimitBackend backend;
+    private final boolean enabled;
+    private final int burst;
+    private final Duration interval;
+    private final LongAdder rejected = new LongAdder();
+
+    public ChatRateLimiter(RateLimitBackend chatRateLimitBackend,
+                           @Value("${app.chat.rate-limit.enabled:true}") boolean enabled,
+                           @Value("${app.chat.rate-limit.requests-per-minute:20}") int requestsPerMinute,
+                           @Value("${app.chat.rate-limit.burst:10}") int burst) {
+        this.backend = chatRateLimitBackend;
+        this.enabled = enabled;
+        this.burst = burst;
+        this.interval = Duration.ofMinutes(1).dividedBy(requestsPerMinute);
+    }
+
+    // Throws 429 with Retry-After once the user is over their limit
+    public void check(Long userId) {
+        if (!enabled) {
+            return;
+        }
+        Duration wait = backend.tryAcquire("chat:" + userId, burst, interval);
+        if (!wait.isZero()) {
+            rejected.increment();
+            throw new RetryAfterException(HttpStatus.TOO_MANY_REQUESTS,
+                    "You're sending messages too quickly, try again shortly", wait);
+        }
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,69 @@
+package com.pawfect.backend.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Consecutive-failure circuit breaker. After {@code failureThreshold} failures in a row it opens and
+ * rejects calls for {@code openDuration}; then a single probe call is let through (half-open), whose
+ * outcome closes or re-opens the circuit.
+ */
+final class CircuitBreaker {
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean probeInFlight = new AtomicBoolean();
+    private volatile long openedAt = -1; // -1 = closed
+
+    CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::currentTimeMillis);
+    }
+
+    // `clock` in epoch milliseconds; tests move it by hand
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openDuration.toMillis();
+        this.clock = clock;
+    }
+
+    boolean tryAcquire() {
+        long opened = openedAt;
+        if (opened < 0) {
+            return true;
+        }
+        if (clock.getAsLong() - opened < openMillis) {
+            return false;
+        }
+        return probeInFlight.compareAndSet(false, true);
+    }
+
+    void onSuccess() {
+        consecutiveFailures.set(0);
+        openedAt = -1;
+        probeInFlight.set(false);
+    }
+
+    void onFailure() {
+        boolean probeFailed = probeInFlight.getAndSet(false);
+        if (probeFailed || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    boolean isOpen() {
+        return openedAt >= 0;
+    }
+
+    Duration remainingOpen() {
+        long opened = openedAt;
+        if (opened < 0) {
+            return Duration.ZERO;
+        }
+        return Duration.ofMillis(Math.max(0, openMillis - (clock.getAsLong() - opened)));
+    }
+}
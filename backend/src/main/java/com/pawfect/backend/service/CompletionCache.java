@@ -0,0 +1,90 @@
+package com.pawfect.backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.pawfect.backend.dto.Dtos.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Opt-in cache of model replies for short, common openers ("my dog ate chocolate").
+ * Keyed on a hash of model, system prompt and the normalized history; only histories of up to
+ * {@code groq.response-cache.max-history} messages are cached, so personal follow-ups never are.
+ * Eviction is Caffeine's size-bounded W-TinyLFU with a write TTL.
+ */
+@Component
+public class CompletionCache {
+
+    private final boolean enabled;
+    private final int maxHistory;
+    private final Cache<String, String> completions;
+
+    public CompletionCache(@Value("${groq.response-cache.enabled:false}") boolean enabled,
+                           @Value("${groq.response-cache.max-history:1}") int maxHistory,
+                           @Value("${groq.response-cache.size:1000}") long size,
+                           @Value("${groq.response-cache.ttl-minutes:60}") long ttlMinutes) {
+        this.enabled = enabled;
+        this.maxHistory = maxHistory;
+        this.completions = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+    }
+
+    // Returns null when caching is switched off or the history isn't a cacheable opener
+    public String keyFor(String model, String systemPrompt, List<ChatMessage> messages) {
+        if (!enabled || messages.isEmpty() || messages.size() > maxHistory) {
+            return null;
+        }
+        MessageDigest digest = sha256();
+        update(digest, model);
+        update(digest, systemPrompt);
+        for (ChatMessage message : messages) {
+            update(digest, message.getRole());
+            update(digest, normalize(message.getContent()));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public String get(String key) {
+        return key == null ? null : completions.getIfPresent(key);
+    }
+
+    public void put(String key, String completion) {
+        if (key != null && completion != null && !completion.isBlank()) {
+            completions.put(key, completion);
+        }
+    }
+
+    public CacheStats stats() {
+        return completions.stats();
+    }
+
+    // Case and whitespace differences shouldn't split otherwise identical questions
+    static String normalize(String content) {
+        return content.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.pawfect.backend.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Pulls the reply text and token usage out of a chat completion (or one SSE chunk of a streamed
+ * completion) with a streaming parser, skipping everything else without building a tree.
+ *
+ * <p>Handles {@code choices[0].message.content}, {@code choices[0].delta.content}, and usage
+ * reported either at the top level or under Groq's {@code x_groq} extension.
+ */
+final class CompletionParser {
+
+    record Completion(String content, int promptTokens, int completionTokens) {
+    }
+
+    private String content = "";
+    private int promptTokens;
+    private int completionTokens;
+
+    private CompletionParser() {
+    }
+
+    static Completion parse(JsonFactory factory, InputStream body) throws IOException {
+        try (JsonParser parser = factory.createParser(body)) {
+            return new CompletionParser().read(parser);
+        }
+    }
+
+    static Completion parse(JsonFactory factory, String chunk) throws IOException {
+        try (JsonParser parser = factory.createParser(chunk)) {
+            return new CompletionParser().read(parser);
+        }
+    }
+
+    private Completion read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object from Groq API");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "choices" -> readChoices(parser);
+                case "usage" -> readUsage(parser);
+                case "x_groq" -> readExtension(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return new Completion(content, promptTokens, completionTokens);
+    }
+
+    // Only the first choice is used
+    private void readChoices(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        boolean first = true;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (first && parser.currentToken() == JsonToken.START_OBJECT) {
+                readChoice(parser);
+            } else {
+                parser.skipChildren();
+            }
+            first = false;
+        }
+    }
+
+    private void readChoice(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ((field.equals("message") || field.equals("delta")) && parser.currentToken() == JsonToken.START_OBJECT) {
+                readMessage(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readMessage(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("content") && value == JsonToken.VALUE_STRING) {
+                content = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readUsage(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NUMBER_INT && field.equals("prompt_tokens")) {
+                promptTokens = parser.getIntValue();
+            } else if (value == JsonToken.VALUE_NUMBER_INT && field.equals("completion_tokens")) {
+                completionTokens = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // Streamed Groq responses report usage in the final chunk as x_groq.usage
+    private void readExtension(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("usage")) {
+                readUsage(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.pawfect.backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.pawfect.backend.entity.MessageArchive;
+import com.pawfect.backend.repository.ChatMessageRepository;
+import com.pawfect.backend.repository.ConversationRepository;
+import com.pawfect.backend.repository.MessageArchiveRepository;
+import com.pawfect.backend.repository.MessageView;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Cold storage for the messages of conversations nobody has touched in a while. A conversation's messages
+ * are packed into one deflated row in message_archives and removed from messages; reads merge them with
+ * any newer hot messages. Unpacked archives are cached up to {@code cache-size-mb}, so a conversation
+ * someone is reading again isn't inflated on every load. ArchiveCompactor decides when to archive.
+ */
+@Component
+public class ConversationArchive {
+
+    // Display order, and the order of (created_at, id) keyset pages
+    public static final Comparator<MessageView> CHRONOLOGICAL =
+            Comparator.comparing(MessageView::getCreatedAt).thenComparing(MessageView::getId);
+
+    // First byte of every payload, so the codec can change without rewriting old archives
+    private static final byte FORMAT_DEFLATE = 1;
+
+    private final ConversationRepository conversationRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final MessageArchiveRepository messageArchiveRepository;
+    private final Cache<String, Unpacked> unpacked;
+
+    public ConversationArchive(ConversationRepository conversationRepository,
+                               ChatMessageRepository chatMessageRepository,
+                               MessageArchiveRepository messageArchiveRepository,
+                               @Value("${app.chat.archive.cache-size-mb:64}") long cacheSizeMb) {
+        this.conversationRepository = conversationRepository;
+        this.chatMessageRepository = chatMessageRepository;
+        this.messageArchiveRepository = messageArchiveRepository;
+        this.unpacked = Caffeine.newBuilder()
+                .maximumWeight(cacheSizeMb * 1024 * 1024)
+                .weigher((String id, Unpacked archive) -> archive.weight())
+                .recordStats()
+                .build();
+    }
+
+    /** A message restored from an archive. */
+    @Getter
+    @AllArgsConstructor
+    public static final class ArchivedMessage implements MessageView {
+        private final String id;
+        private final String role;
+        private final String content;
+        private final LocalDateTime createdAt;
+    }
+
+    /** What one archiving moved: hot messages, the space their rows took, and how much the archive grew. */
+    public record Archived(int messages, long sourceBytes, long packedBytes) {
+    }
+
+    // Cache entries carry the archived_at they were read at, so a re-archived conversation is read afresh
+    private record Unpacked(LocalDateTime archivedAt, List<MessageView> messages) {
+        int weight() {
+            int bytes = 0;
+            for (MessageView message : messages) {
+                bytes += 64 + message.getContent().length() * 2;
+            }
+            return bytes;
+        }
+    }
+
+    // Archived messages of a conversation, oldest first; `archivedAt` is the conversation's archived_at,
+    // which callers read in the same snapshot as its hot messages (none when it was never archived)
+    public List<MessageView> messages(String conversationId, LocalDateTime archivedAt) {
+        if (archivedAt == null) {
+            return List.of();
+        }
+        Unpacked cached = unpacked.getIfPresent(conversationId);
+        if (cached != null && cached.archivedAt().equals(archivedAt)) {
+            return cached.messages();
+        }
+        Unpacked loaded = messageArchiveRepository.findById(conversationId)
+                .map(archive -> new Unpacked(archive.getArchivedAt(), unpack(archive.getPayload())))
+                .orElseGet(() -> new Unpacked(archivedAt, List.of()));
+        unpacked.put(conversationId, loaded);
+        return loaded.messages();
+    }
+
+    // Moves the conversation's hot messages into its archive, merged with anything archived before.
+    // Returns null if it is no longer due (touched since it was picked) or another archiver holds it.
+    @Transactional
+    public Archived archive(String conversationId, LocalDateTime cutoff) {
+        if (conversationRepository.lockArchivable(conversationId, cutoff).isEmpty()) {
+            return null;
+        }
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS); // as stored, for the cache check
+        List<MessageView> hot = chatMessageRepository.findViewsByConversationId(conversationId);
+        Archived archived = new Archived(0, 0, 0);
+        if (!hot.isEmpty()) {
+            MessageArchive archive = messageArchiveRepository.findById(conversationId)
+                    .orElseGet(() -> MessageArchive.builder().conversationId(conversationId).build());
+            List<MessageView> all = new ArrayList<>(hot.size() + archive.getMessageCount());
+            if (archive.getPayload() != null) {
+                all.addAll(unpack(archive.getPayload()));
+            }
+            all.addAll(hot);
+            all.sort(CHRONOLOGICAL);
+
+            byte[] payload = pack(all);
+            long sourceBytes = chatMessageRepository.deleteAllInConversation(conversationId);
+            archived = new Archived(hot.size(), sourceBytes, payload.length - archive.getPackedBytes());
+            archive.setMessageCount(all.size());
+            archive.setSourceBytes(archive.getSourceBytes() + sourceBytes);
+            archive.setPackedBytes(payload.length);
+            archive.setPayload(payload);
+            archive.setArchivedAt(now);
+            messageArchiveRepository.save(archive);
+        }
+        conversationRepository.markArchived(conversationId, now);
+        unpacked.invalidate(conversationId);
+        return archived;
+    }
+
+    public void evict(String conversationId) {
+        unpacked.invalidate(conversationId);
+    }
+
+    // Each miss is one archive read and inflate
+    public CacheStats stats() {
+        return unpacked.stats();
+    }
+
+    // ── Payload format ────────────────────────────────
+    //
+    // A format byte, then deflated: the message count and, per message, its id, role, creation time and
+    // UTF-8 content. Archives are written once and read rarely, so they get the best (slowest) compression;
+    // inflating costs the same at any level.
+
+    static byte[] pack(List<MessageView> messages) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(FORMAT_DEFLATE);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater, 8192))) {
+            out.writeInt(messages.size());
+            for (MessageView message : messages) {
+                UUID id = UUID.fromString(message.getId());
+                out.writeLong(id.getMostSignificantBits());
+                out.writeLong(id.getLeastSignificantBits());
+                out.writeUTF(message.getRole());
+                out.writeLong(message.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(message.getCreatedAt().getNano());
+                byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(content.length);
+                out.write(content);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not pack messages", e); // in memory, so not expected
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<MessageView> unpack(byte[] payload) {
+        if (payload.length == 0 || payload[0] != FORMAT_DEFLATE) {
+            throw new IllegalStateException("Unknown message archive format");
+        }
+        try (DataInputStream in = new DataInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1)))) {
+            int count = in.readInt();
+            List<MessageView> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = new UUID(in.readLong(), in.readLong()).toString();
+                String role = in.readUTF();
+                LocalDateTime createdAt = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+                byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+                messages.add(new ArchivedMessage(id, role, new String(content, StandardCharsets.UTF_8), createdAt));
+            }
+            return Collections.unmodifiableList(messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt message archive", e);
+        }
+    }
+}
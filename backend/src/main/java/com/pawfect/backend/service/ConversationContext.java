@@ -0,0 +1,153 @@
+package com.pawfect.backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.pawfect.backend.dto.Dtos.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Server-side prompt history for conversations whose clients send only the new message.
+ * Keeps the most recent turns that fit the token budget per conversation in memory, so a
+ * follow-up turn doesn't re-read the whole conversation from the database. Once a conversation
+ * has a rolling summary (ConversationSummarizer), the window holds only messages after it and the
+ * summary leads the prompt.
+ */
+@Component
+public class ConversationContext {
+
+    private final Cache<String, History> windows;
+    private final int maxTokens;
+
+    public ConversationContext(
+            @Value("${app.chat.context.max-tokens:6000}") int maxTokens,
+            @Value("${app.chat.context.cache-size:10000}") long cacheSize,
+            @Value("${app.chat.context.cache-ttl-minutes:30}") long cacheTtlMinutes) {
+        this.maxTokens = maxTokens;
+        this.windows = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(Duration.ofMinutes(cacheTtlMinutes))
+                .recordStats()
+                .build();
+    }
+
+    /** A conversation as stored: its summary, if any, covers the first `summarized` of `messages`. */
+    public record Stored(String summary, int summarized, int summarizedTokens, List<ChatMessage> messages) {
+    }
+
+    /**
+     * The cached prompt state: the summary, the newest messages after it that fit the budget, and how many
+     * messages the conversation has in all (so the summarizer knows how many are not yet summarized).
+     */
+    public record History(String summary, int summarized, int summarizedTokens, List<ChatMessage> recent, int total) {
+
+        // Summary first (as a system message), then the recent messages
+        public List<ChatMessage> prompt() {
+            if (summary == null) {
+                return recent;
+            }
+            List<ChatMessage> prompt = new ArrayList<>(recent.size() + 1);
+            prompt.add(summaryMessage(summary));
+            prompt.addAll(recent);
+            return prompt;
+        }
+
+        public int unsummarized() {
+            return total - summarized;
+        }
+    }
+
+    // Returns the windowed history, loading it through the supplier on a cache miss. The load runs outside the
+    // cache, not under its map lock (see PrincipalCache#get); if another load lands first, the window that has
+    // seen more messages wins.
+    public History history(String conversationId, Supplier<Stored> loader) {
+        History cached = windows.getIfPresent(conversationId);
+        if (cached != null) {
+            return cached;
+        }
+        Stored stored = loader.get();
+        List<ChatMessage> messages = stored.messages();
+        List<ChatMessage> unsummarized = messages.subList(Math.min(stored.summarized(), messages.size()), messages.size());
+        History loaded = new History(stored.summary(), stored.summarized(), stored.summarizedTokens(),
+                window(unsummarized, budget(stored.summary())), messages.size());
+        return windows.asMap().merge(conversationId, loaded,
+                (current, fresh) -> fresh.total() > current.total() ? fresh : current);
+    }
+
+    // Appends to a cached window; a miss is left alone since the next load reads the stored message
+    public void append(String conversationId, ChatMessage message) {
+        windows.asMap().computeIfPresent(conversationId, (id, current) -> {
+            List<ChatMessage> next = new ArrayList<>(current.recent().size() + 1);
+            next.addAll(current.recent());
+            next.add(message);
+            return new History(current.summary(), current.summarized(), current.summarizedTokens(),
+                    window(next, budget(current.summary())), current.total() + 1);
+        });
+    }
+
+    // A new summary now covers the first `summarized` messages; drops them from a cached window
+    public void summarized(String conversationId, String summary, int summarized, int summarizedTokens) {
+        windows.asMap().computeIfPresent(conversationId, (id, current) -> {
+            List<ChatMessage> recent = current.recent();
+            int after = Math.max(0, current.total() - summarized);
+            List<ChatMessage> kept = recent.subList(Math.max(0, recent.size() - after), recent.size());
+            return new History(summary, summarized, summarizedTokens, window(kept, budget(summary)), current.total());
+        });
+    }
+
+    // Estimated prompt tokens of a conversation's cached window, summary included, or the whole budget when it
+    // isn't cached. Quiet, so the cache statistics still count only the history reads.
+    public int promptTokens(String conversationId) {
+        History cached = windows.policy().getIfPresentQuietly(conversationId);
+        if (cached == null) {
+            return maxTokens;
+        }
+        int tokens = 0;
+        for (ChatMessage message : cached.prompt()) {
+            tokens += estimateTokens(message);
+        }
+        return tokens;
+    }
+
+    public void evict(String conversationId) {
+        windows.invalidate(conversationId);
+    }
+
+    // Each miss is one history read from the database
+    public CacheStats stats() {
+        return windows.stats();
+    }
+
+    static ChatMessage summaryMessage(String summary) {
+        return new ChatMessage("system", "Summary of the earlier conversation:\n" + summary);
+    }
+
+    private int budget(String summary) {
+        return summary == null ? maxTokens : maxTokens - estimateTokens(summaryMessage(summary));
+    }
+
+    // Keeps the newest messages whose estimated token count fits the budget (always at least one)
+    private static List<ChatMessage> window(List<ChatMessage> messages, int budget) {
+        int from = messages.size();
+        while (from > 0) {
+            int cost = estimateTokens(messages.get(from - 1));
+            if (cost > budget && from < messages.size()) {
+                break;
+            }
+            budget -= cost;
+            from--;
+        }
+        return List.copyOf(messages.subList(from, messages.size()));
+    }
+
+    // Rough estimate — about four characters per token plus per-message framing
+    static int estimateTokens(ChatMessage message) {
+        return message.getContent().length() / 4 + 4;
+    }
+}
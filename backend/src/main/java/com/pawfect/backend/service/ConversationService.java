@@ -5,130 +5,692 @@ import com.pawfect.backend.entity.ChatMessageEntity;
 import com.pawfect.backend.entity.Conversation;
 import com.pawfect.backend.entity.User;
 import com.pawfect.backend.repository.ChatMessageRepository;
+import com.pawfect.backend.repository.ConversationDetailView;
+import com.pawfect.backend.repository.ConversationHistoryView;
 import com.pawfect.backend.repository.ConversationRepository;
+import com.pawfect.backend.repository.ConversationSearchView;
+import com.pawfect.backend.repository.ConversationSummaryView;
+import com.pawfect.backend.repository.MessageView;
 import com.pawfect.backend.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.HtmlUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ConversationService {
 
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_SEARCH_PAGE_SIZE = 50;
+    private static final int MAX_SEARCH_LENGTH = 200;
+    // Matching chunks ranked per search, newest first; older matches beyond this aren't ranked.
+    // Sized so a user with 100k messages searches in under 50 ms p99 (benchmarks/SearchBench.java)
+    private static final int SEARCH_CANDIDATES = 300;
+    private static final Duration STREAM_RETRY_AFTER = Duration.ofSeconds(1);
+
     private final ConversationRepository conversationRepository;
     private final ChatMessageRepository chatMessageRepository;
     private final UserRepository userRepository;
-    private final GroqService groqService;
+    private final LlmProvider llmProvider;
+    private final ConversationContext conversationContext;
+    private final ConversationArchive conversationArchive;
+    private final ConversationSummarizer conversationSummarizer;
+    private final ExecutorService chatStreamExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final MessageWriteBehind writeBehind;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.chat.stream.timeout-ms:120000}")
+    private long streamTimeoutMs;
+
+    @Value("${app.chat.purge.batch-size:100}")
+    private int purgeBatchSize;
+
+    private Timer resolveTimer;
+    private Timer saveTimer;
+    private Timer beginTurnTimer;
+    private Timer completeTurnTimer;
+    private Timer searchTimer;
+    private Counter streamsRejected;
+    private TransactionTemplate snapshotReads;
+
+    @PostConstruct
+    void init() {
+        resolveTimer = Timer.builder("pawfect.chat.conversation.resolve")
+                .description("Finding or creating the conversation for a chat turn")
+                .register(meterRegistry);
+        saveTimer = Timer.builder("pawfect.db.message.save")
+                .description("ChatMessageRepository.save calls")
+                .register(meterRegistry);
+        // The inserts themselves are flushed on commit, so the turn transactions are timed as a whole too
+        beginTurnTimer = Timer.builder("pawfect.chat.transaction")
+                .description("Chat turn transactions, including commit")
+                .tag("phase", "user")
+                .register(meterRegistry);
+        completeTurnTimer = Timer.builder("pawfect.chat.transaction")
+                .description("Chat turn transactions, including commit")
+                .tag("phase", "assistant")
+                .register(meterRegistry);
+        searchTimer = Timer.builder("pawfect.chat.search")
+                .description("Conversation full-text search queries")
+                .register(meterRegistry);
+        streamsRejected = Counter.builder("pawfect.chat.stream.rejected")
+                .description("Streamed chats turned away with 503 because every stream thread was busy")
+                .register(meterRegistry);
+        snapshotReads = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        snapshotReads.setReadOnly(true);
+        snapshotReads.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
 
     // ── Get user's conversations ──────────────────────
+    //
+    // Reads below select straight into projections, so no managed entities or dirty-checking snapshots are built.
 
-    public List<ConversationSummary> getConversations(String email) {
-        User user = getUser(email);
-        return conversationRepository.findByUserOrderByUpdatedAtDesc(user)
+    @Transactional(readOnly = true)
+    public List<ConversationSummary> getConversations(Long userId) {
+        User user = getUser(userId);
+        return conversationRepository.findSummariesByUserOrderByUpdatedAtDesc(user)
                 .stream()
-                .map(c -> ConversationSummary.builder()
-                        .id(c.getId())
-                        .title(c.getTitle())
-                        .createdAt(c.getCreatedAt())
-                        .updatedAt(c.getUpdatedAt())
-                        .build())
+                .map(ConversationService::toSummary)
                 .collect(Collectors.toList());
     }
 
+    @Transactional(readOnly = true)
+    public ConversationPage getConversations(Long userId, int limit, String cursor) {
+        User user = getUser(userId);
+        int size = pageSize(limit);
+        // Fetch one extra row to learn whether another page exists
+        List<ConversationSummaryView> rows;
+        if (cursor == null) {
+            rows = conversationRepository.findFirstPage(user, Limit.of(size + 1));
+        } else {
+            PageCursor after = PageCursor.decode(cursor);
+            rows = conversationRepository.findPageBefore(user, after.at(), after.id(), Limit.of(size + 1));
+        }
+
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            ConversationSummaryView last = rows.get(size - 1);
+            nextCursor = new PageCursor(last.getUpdatedAt(), last.getId()).encode();
+        }
+        return ConversationPage.builder()
+                .conversations(rows.stream().map(ConversationService::toSummary).collect(Collectors.toList()))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
     // ── Load a full conversation ──────────────────────
+    //
+    // Older messages may sit in the archive (ConversationArchive). Loads read the conversation and its hot
+    // messages in one snapshot (repeatable read), so an archiving that commits in between can't hide any.
+
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public ConversationDetail getConversation(String id, Long userId) {
+        ConversationDetailView conversation = findDetail(id, userId);
+        return toDetail(conversation, storedMessages(conversation.getId(), conversation.getArchivedAt()));
+    }
+
+    // Latest `limit` messages (before `cursor` when scrolling back), still in chronological order
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public ConversationDetail getConversation(String id, Long userId, int limit, String cursor) {
+        ConversationDetailView conversation = findDetail(id, userId);
+
+        int size = pageSize(limit);
+        PageCursor before = cursor == null ? null : PageCursor.decode(cursor);
+        List<MessageView> rows;
+        if (before == null) {
+            rows = chatMessageRepository.findLatest(conversation.getId(), Limit.of(size + 1));
+        } else {
+            rows = chatMessageRepository.findLatestBefore(conversation.getId(), before.at(), before.id(), Limit.of(size + 1));
+        }
+        List<MessageView> archived = conversationArchive.messages(conversation.getId(), conversation.getArchivedAt());
+        if (!archived.isEmpty()) {
+            // Same page over archived and hot messages together
+            List<MessageView> merged = new ArrayList<>(rows);
+            merged.addAll(latestArchived(archived, before, size + 1));
+            merged.sort(ConversationArchive.CHRONOLOGICAL.reversed());
+            rows = merged.subList(0, Math.min(merged.size(), size + 1));
+        }
+
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            MessageView oldest = rows.get(size - 1);
+            nextCursor = new PageCursor(oldest.getCreatedAt(), oldest.getId()).encode();
+        }
+        List<MessageView> chronological = new ArrayList<>(rows);
+        Collections.reverse(chronological);
+
+        ConversationDetail detail = toDetail(conversation, chronological);
+        detail.setNextCursor(nextCursor);
+        return detail;
+    }
+
+    // ── Search ────────────────────────────────────────
+
+    @Transactional(readOnly = true)
+    public ConversationSearchPage search(Long userId, String text, int limit, String cursor) {
+        if (text == null || text.isBlank() || text.length() > MAX_SEARCH_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Search text must be 1 to " + MAX_SEARCH_LENGTH + " characters");
+        }
+        int size = Math.max(1, Math.min(limit, MAX_SEARCH_PAGE_SIZE));
+        int from = cursor == null ? 0 : PageCursor.decodeOffset(cursor);
+        List<ConversationSearchView> rows = searchTimer.record(() ->
+                conversationRepository.search(userId, text, SEARCH_CANDIDATES, size + 1, from));
+
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            nextCursor = PageCursor.encodeOffset(from + size);
+        }
+        return ConversationSearchPage.builder()
+                .results(rows.stream().map(hit -> toSearchResult(hit, snippet(hit, text))).collect(Collectors.toList()))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    // The search marks the message to quote even when it has been archived; its text then comes from the archive
+    private String snippet(ConversationSearchView hit, String text) {
+        if (hit.getSnippet() != null || hit.getMessageId() == null || hit.getArchivedAt() == null) {
+            return hit.getSnippet();
+        }
+        return conversationArchive.messages(hit.getId(), hit.getArchivedAt()).stream()
+                .filter(message -> message.getId().equals(hit.getMessageId()))
+                .findFirst()
+                .map(message -> conversationRepository.searchSnippet(message.getContent(), text))
+                .orElse(null);
+    }
+
+    // ── Send a message ────────────────────────────────
+    //
+    // Runs in three phases so no DB connection is held while the model is generating:
+    // a short transaction for the user turn, the upstream call, then a short transaction for the reply.
+    // Upstream capacity is reserved before the first phase, so a 429/503 with Retry-After leaves nothing
+    // saved for the client's retry to repeat; a model call that fails later takes the user turn back out.
+
+    public ChatResponse sendMessage(ChatRequest request, Long userId) {
+        Conversation conversation;
+        String aiReply;
+        try (UpstreamGate.Pass pass = llmProvider.reserve(promptTokens(checkRequest(request)))) {
+            Turn turn = startTurn(pass, request, userId);
+            conversation = turn.conversation();
+
+            // Call Groq with the conversation history — outside any transaction
+            try {
+                aiReply = llmProvider.chat(pass, turn.history());
+            } catch (RuntimeException e) {
+                abandonTurn(turn, true);
+                throw e;
+            }
+        }
+
+        // Save assistant reply and touch updatedAt
+        completeTurn(conversation, aiReply);
+
+        return ChatResponse.builder()
+                .conversationId(conversation.getId())
+                .message(aiReply)
+                .build();
+    }
+
+    // ── Stream a message ──────────────────────────────
+
+    public SseEmitter streamMessage(ChatRequest request, Long userId) {
+        // Everything that can turn the chat away — admission, the upstream concurrency permit, a relay thread —
+        // comes before the user turn is saved, so a 429/503 with Retry-After leaves nothing for the retry to
+        // repeat. The relay thread is claimed now and waits for the stream to hand it.
+        UpstreamGate.Pass pass = llmProvider.reserve(promptTokens(checkRequest(request)));
+        CompletableFuture<Runnable> relay = new CompletableFuture<>();
+        try {
+            chatStreamExecutor.execute(() -> relay.join().run());
+        } catch (RejectedExecutionException e) {
+            pass.refund();
+            pass.close();
+            streamsRejected.increment();
+            throw new RetryAfterException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many chats in progress, try again shortly", STREAM_RETRY_AFTER);
+        }
+
+        // The request itself goes out here, on the request thread, so an upstream failure is still a plain
+        // status (and takes the user turn back out). The relay takes over the open stream, and the pass with it.
+        Turn turn;
+        Stream<String> deltas;
+        try {
+            turn = startTurn(pass, request, userId);
+            try {
+                deltas = llmProvider.chatStream(pass, turn.history());
+            } catch (RuntimeException e) {
+                abandonTurn(turn, true);
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            pass.close();
+            relay.complete(() -> { });
+            throw e;
+        }
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        AtomicBoolean disconnected = new AtomicBoolean();
+
+        // Client went away (or timed out) — stop reading and cancel the upstream request
+        Runnable cancel = () -> {
+            disconnected.set(true);
+            deltas.close();
+        };
+        emitter.onCompletion(cancel);
+        emitter.onTimeout(cancel);
+        emitter.onError(e -> cancel.run());
+
+        relay.complete(() -> relayStream(deltas, turn, emitter, disconnected));
+        return emitter;
+    }
+
+    private void relayStream(Stream<String> deltas, Turn turn, SseEmitter emitter, AtomicBoolean disconnected) {
+        Conversation conversation = turn.conversation();
+        StringBuilder reply = new StringBuilder();
+        // Set before the save is attempted, so no later failure (the done event, a closed emitter) saves it again
+        boolean saved = false;
+        try (deltas) {
+            emitter.send(SseEmitter.event().name("conversation")
+                    .data(Map.of("conversationId", conversation.getId()), MediaType.APPLICATION_JSON));
+
+            Iterator<String> it = deltas.iterator();
+            while (!disconnected.get() && it.hasNext()) {
+                String delta = it.next();
+                reply.append(delta);
+                emitter.send(SseEmitter.event().name("token")
+                        .data(Map.of("content", delta), MediaType.APPLICATION_JSON));
+            }
+            deltas.close(); // frees the upstream permit before the reply is saved
+
+            saved = true;
+            persistReply(conversation, reply);
+            if (!disconnected.get()) {
+                emitter.send(SseEmitter.event().name("done")
+                        .data(ChatResponse.builder()
+                                .conversationId(conversation.getId())
+                                .message(reply.toString())
+                                .build(), MediaType.APPLICATION_JSON));
+                emitter.complete();
+            }
+        } catch (IOException e) {
+            // Client disconnected mid-stream; keep whatever was generated so far
+            if (!saved) {
+                persistPartialReply(turn, reply);
+            }
+            emitter.completeWithError(e);
+        } catch (Exception e) {
+            if (!saved) {
+                persistPartialReply(turn, reply);
+            }
+            if (disconnected.get()) {
+                return; // the disconnect closed the stream under the relay; nothing left to tell the client
+            }
+            log.warn("Chat stream failed for conversation {}", conversation.getId(), e);
+            try {
+                emitter.send(SseEmitter.event().name("error")
+                        .data(Map.of("message", "Failed to generate a reply"), MediaType.APPLICATION_JSON));
+                emitter.complete();
+            } catch (IOException ignored) {
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    // The assistant message is written once per turn, after the stream ends or fails (relayStream's `saved`)
+    private void persistReply(Conversation conversation, StringBuilder reply) {
+        if (reply.isEmpty()) {
+            return;
+        }
+        completeTurn(conversation, reply.toString());
+    }
+
+    // A stream cut short before its first token takes the user turn back out, so the retry doesn't repeat it.
+    // The conversation stays even if this turn created it: the client already has its id.
+    private void persistPartialReply(Turn turn, StringBuilder reply) {
+        if (reply.isEmpty()) {
+            abandonTurn(turn, false);
+        } else {
+            persistReply(turn.conversation(), reply);
+        }
+    }
+
+    // ── Delete conversations ──────────────────────────
+    //
+    // Set-based: no entities are loaded, and the database deletes the messages with each conversation.
+
+    @Transactional
+    public void deleteConversation(String id, Long userId) {
+        if (conversationRepository.deleteByIdAndUser(checkId(id), getUser(userId)) == 0) {
+            throw new RuntimeException("Conversation not found");
+        }
+        writeBehind.discard(id);
+        conversationContext.evict(id);
+        conversationArchive.evict(id);
+    }
+
+    // Deletes every conversation of the user, a batch per short transaction so no single statement
+    // holds locks (or a connection) for the whole account
+    public int deleteAllConversations(Long userId) {
+        User user = getUser(userId);
+        int deleted = 0;
+        while (true) {
+            List<String> ids = conversationRepository.findIdsByUser(user, Limit.of(purgeBatchSize));
+            if (ids.isEmpty()) {
+                return deleted;
+            }
+            deleted += transactionTemplate.execute(status -> conversationRepository.deleteAllByIds(ids));
+            ids.forEach(id -> {
+                writeBehind.discard(id);
+                conversationContext.evict(id);
+                conversationArchive.evict(id);
+            });
+        }
+    }
+
+    // ── Helpers ───────────────────────────────────────
+
+    // Conversation ids are uuid columns; anything else gets a 400 before it reaches a query, as PageCursor does
+    private static String checkId(String id) {
+        try {
+            UUID.fromString(id);
+            return id;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid conversation id");
+        }
+    }
+
+    // A turn carries either the new message or the full history, never both or neither; the rest of the turn
+    // reads whichever is set, so a malformed body gets its 400 here rather than failing halfway through
+    private static ChatRequest checkRequest(ChatRequest request) {
+        boolean hasMessage = request.getMessage() != null;
+        boolean hasHistory = request.getMessages() != null;
+        if (hasMessage == hasHistory) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Send exactly one of message or messages");
+        }
+        if (hasHistory && request.getMessages().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "messages must not be empty");
+        }
+        return request;
+    }
 
-    public ConversationDetail getConversation(String id, String email) {
-        User user = getUser(email);
-        Conversation conversation = conversationRepository.findByIdAndUser(id, user)
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    private ConversationDetailView findDetail(String id, Long userId) {
+        return conversationRepository.findDetailByIdAndUser(checkId(id), getUser(userId))
                 .orElseThrow(() -> new RuntimeException("Conversation not found"));
+    }
 
-        List<ChatMessage> messages = chatMessageRepository
-                .findByConversationOrderByCreatedAtAsc(conversation)
-                .stream()
-                .map(m -> new ChatMessage(m.getRole(), m.getContent()))
-                .collect(Collectors.toList());
+    // Archived messages followed by the hot ones, oldest first; call within one snapshot
+    private List<MessageView> storedMessages(String conversationId, LocalDateTime archivedAt) {
+        List<MessageView> hot = chatMessageRepository.findViewsByConversationId(conversationId);
+        List<MessageView> archived = conversationArchive.messages(conversationId, archivedAt);
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        List<MessageView> all = new ArrayList<>(archived.size() + hot.size());
+        all.addAll(archived);
+        all.addAll(hot);
+        all.sort(ConversationArchive.CHRONOLOGICAL);
+        return all;
+    }
 
+    // Up to `count` archived messages before the cursor (all of them without one), newest first
+    private static List<MessageView> latestArchived(List<MessageView> archived, PageCursor before, int count) {
+        List<MessageView> latest = new ArrayList<>(count);
+        for (int i = archived.size() - 1; i >= 0 && latest.size() < count; i--) {
+            MessageView message = archived.get(i);
+            int order = before == null ? -1 : message.getCreatedAt().compareTo(before.at());
+            if (order < 0 || (order == 0 && message.getId().compareTo(before.id()) < 0)) {
+                latest.add(message);
+            }
+        }
+        return latest;
+    }
+
+    static ConversationSummary toSummary(ConversationSummaryView conversation) {
+        return ConversationSummary.builder()
+                .id(conversation.getId())
+                .title(conversation.getTitle())
+                .createdAt(conversation.getCreatedAt())
+                .updatedAt(conversation.getUpdatedAt())
+                .build();
+    }
+
+    // Without a snippet there is no message to link to
+    static ConversationSearchResult toSearchResult(ConversationSearchView hit, String snippet) {
+        return ConversationSearchResult.builder()
+                .id(hit.getId())
+                .title(hit.getTitle())
+                .titleHighlight(highlight(hit.getTitleHighlight()))
+                .messageId(snippet == null ? null : hit.getMessageId())
+                .snippet(highlight(snippet))
+                .rank(hit.getRank())
+                .updatedAt(hit.getUpdatedAt())
+                .build();
+    }
+
+    // The database marks matches with control characters, so the stored text can be escaped before tags go in
+    private static String highlight(String marked) {
+        if (marked == null) {
+            return null;
+        }
+        return HtmlUtils.htmlEscape(marked).replace("\u0002", "<mark>").replace("\u0003", "</mark>");
+    }
+
+    static ConversationDetail toDetail(ConversationSummaryView conversation, List<MessageView> messages) {
         return ConversationDetail.builder()
                 .id(conversation.getId())
                 .title(conversation.getTitle())
-                .messages(messages)
+                .messages(messages.stream()
+                        .map(m -> new ChatMessage(m.getRole(), m.getContent()))
+                        .collect(Collectors.toList()))
                 .createdAt(conversation.getCreatedAt())
                 .updatedAt(conversation.getUpdatedAt())
                 .build();
     }
 
-    // ── Send a message ────────────────────────────────
+    // The user turn as saved (or queued), whether it created the conversation, and the prompt for it
+    private record Turn(Conversation conversation, boolean created, String userMessageId, List<ChatMessage> history) {
 
-    @Transactional
-    public ChatResponse sendMessage(ChatRequest request, String email) {
-        User user = getUser(email);
+        Turn withHistory(List<ChatMessage> history) {
+            return new Turn(conversation, created, userMessageId, history);
+        }
+    }
 
-        // Find or create conversation
-        Conversation conversation;
-        if (request.getConversationId() != null) {
-            conversation = conversationRepository.findByIdAndUser(request.getConversationId(), user)
-                    .orElseThrow(() -> new RuntimeException("Conversation not found"));
+    // The user turn and the prompt for it, under a reservation that goes back if either fails (nothing was sent)
+    private Turn startTurn(UpstreamGate.Pass pass, ChatRequest request, Long userId) {
+        Turn turn = null;
+        try {
+            turn = beginTurn(request, userId);
+            return turn.withHistory(historyFor(request, turn.conversation()));
+        } catch (RuntimeException e) {
+            pass.refund();
+            if (turn != null) {
+                abandonTurn(turn, true);
+            }
+            throw e;
+        }
+    }
+
+    // Takes back the user message of a turn that got no reply, so the client's retry doesn't store it twice.
+    // A conversation the turn created goes with it, unless the client has been told its id. Best effort: the
+    // turn has already failed, and that failure is what the client should see.
+    private void abandonTurn(Turn turn, boolean deleteCreated) {
+        String id = turn.conversation().getId();
+        try {
+            if (turn.created() && deleteCreated) {
+                writeBehind.discard(id);
+                transactionTemplate.executeWithoutResult(status ->
+                        conversationRepository.deleteByIdAndUser(id, turn.conversation().getUser()));
+            } else if (!writeBehind.withdraw(turn.userMessageId())) {
+                chatMessageRepository.deleteAllByIds(List.of(turn.userMessageId()));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not take back the unanswered message in conversation {}", id, e);
+        }
+        conversationContext.evict(id);
+    }
+
+    // Prompt estimate for admission, made before anything is read: the history the client sent, or the cached
+    // server-side window plus the new message. The provider's reported usage settles the difference.
+    private long promptTokens(ChatRequest request) {
+        if (request.getMessage() == null) {
+            long tokens = 0;
+            for (ChatMessage message : request.getMessages()) {
+                tokens += ConversationContext.estimateTokens(message);
+            }
+            return tokens;
+        }
+        long window = request.getConversationId() != null ? conversationContext.promptTokens(request.getConversationId()) : 0;
+        return window + ConversationContext.estimateTokens(newUserMessage(request));
+    }
+
+    // Find or create the conversation and save the latest user message in one short transaction.
+    // With write-behind the message is queued once the conversation row is committed.
+    private Turn beginTurn(ChatRequest request, Long userId) {
+        boolean created = request.getConversationId() == null;
+        if (writeBehind.isEnabled()) {
+            Conversation conversation = beginTurnTimer.record(() -> transactionTemplate.execute(status ->
+                    resolveTimer.record(() -> resolveConversation(request, getUser(userId)))));
+            String messageId = writeBehind.enqueue(conversation.getId(), "user", newUserMessage(request).getContent());
+            return new Turn(conversation, created, messageId, null);
+        }
+        return beginTurnTimer.record(() -> transactionTemplate.execute(status -> {
+            Conversation conversation = resolveTimer.record(() -> resolveConversation(request, getUser(userId)));
+            ChatMessageEntity message = saveMessage(conversation, "user", newUserMessage(request).getContent());
+            return new Turn(conversation, created, message.getId(), null);
+        }));
+    }
+
+    private void completeTurn(Conversation conversation, String reply) {
+        if (writeBehind.isEnabled()) {
+            writeBehind.enqueue(conversation.getId(), "assistant", reply); // the writer also bumps updatedAt
         } else {
-            // New conversation — title from first user message, truncated to 60 chars
-            String firstMessage = request.getMessages().get(0).getContent();
-            String title = firstMessage.length() > 60
-                    ? firstMessage.substring(0, 60) + "..."
-                    : firstMessage;
-
-            conversation = Conversation.builder()
-                    .user(user)
-                    .title(title)
-                    .build();
-            conversation = conversationRepository.save(conversation);
-        }
-
-        // Save the latest user message
-        ChatMessage lastUserMsg = request.getMessages().get(request.getMessages().size() - 1);
-        ChatMessageEntity userMsgEntity = ChatMessageEntity.builder()
-                .conversation(conversation)
-                .role("user")
-                .content(lastUserMsg.getContent())
-                .build();
-        chatMessageRepository.save(userMsgEntity);
+            completeTurnTimer.record(() -> transactionTemplate.executeWithoutResult(status -> {
+                saveMessage(conversation, "assistant", reply);
+                conversationRepository.touch(conversation.getId(), LocalDateTime.now());
+            }));
+        }
+        conversationContext.append(conversation.getId(), new ChatMessage("assistant", reply));
+    }
 
-        // Call Groq with full history
-        String aiReply = groqService.chat(request.getMessages());
+    // Client-sent history when present; otherwise the server-side window, which now ends with the new message.
+    // Either way a rolling summary stands in for the messages it covers, and a new one starts once due.
+    private List<ChatMessage> historyFor(ChatRequest request, Conversation conversation) {
+        String id = conversation.getId();
+        conversationContext.append(id, newUserMessage(request));
+        if (request.getMessage() == null) {
+            conversationSummarizer.maybeSummarize(id,
+                    request.getMessages().size() - conversation.getSummaryMessageCount(), () -> loadHistory(id));
+            return conversationSummarizer.condense(conversation, request.getMessages());
+        }
+        ConversationContext.History history = conversationContext.history(id, () -> loadHistory(id));
+        conversationSummarizer.maybeSummarize(id, history.unsummarized(), () -> loadHistory(id));
+        conversationSummarizer.recordSavings(history.summary(), history.summarizedTokens());
+        return history.prompt();
+    }
 
-        // Save assistant reply
-        ChatMessageEntity assistantMsgEntity = ChatMessageEntity.builder()
-                .conversation(conversation)
-                .role("assistant")
-                .content(aiReply)
-                .build();
-        chatMessageRepository.save(assistantMsgEntity);
+    // Summary state and stored messages in one snapshot, plus any messages still queued for write-behind
+    // (snapshotted first, so none fall in between)
+    private ConversationContext.Stored loadHistory(String conversationId) {
+        List<MessageWriteBehind.PendingMessage> pending = writeBehind.pending(conversationId);
+        return snapshotReads.execute(status -> {
+            Optional<ConversationHistoryView> state = conversationRepository.findHistoryById(conversationId);
+            List<MessageView> stored = storedMessages(conversationId,
+                    state.map(ConversationHistoryView::getArchivedAt).orElse(null));
+            List<ChatMessage> history = stored.stream()
+                    .map(m -> new ChatMessage(m.getRole(), m.getContent()))
+                    .collect(Collectors.toList());
+            if (!pending.isEmpty()) {
+                Set<String> storedIds = stored.stream().map(MessageView::getId).collect(Collectors.toSet());
+                pending.stream()
+                        .filter(m -> !storedIds.contains(m.id()))
+                        .forEach(m -> history.add(new ChatMessage(m.role(), m.content())));
+            }
+            return state
+                    .map(s -> new ConversationContext.Stored(s.getSummary(), s.getSummaryMessageCount(),
+                            s.getSummarySourceTokens(), history))
+                    .orElseGet(() -> new ConversationContext.Stored(null, 0, 0, history));
+        });
+    }
 
-        // Touch updatedAt
-        conversationRepository.save(conversation);
+    private Conversation resolveConversation(ChatRequest request, User user) {
+        if (request.getConversationId() != null) {
+            return conversationRepository.findByIdAndUser(checkId(request.getConversationId()), user)
+                    .orElseThrow(() -> new RuntimeException("Conversation not found"));
+        }
 
-        return ChatResponse.builder()
-                .conversationId(conversation.getId())
-                .message(aiReply)
+        // New conversation — title from first user message, truncated to 60 chars
+        String firstMessage = request.getMessage() != null
+                ? request.getMessage()
+                : request.getMessages().get(0).getContent();
+        String title = firstMessage.length() > 60
+                ? firstMessage.substring(0, 60) + "..."
+                : firstMessage;
+
+        Conversation conversation = Conversation.builder()
+                .user(user)
+                .title(title)
                 .build();
+        return conversationRepository.save(conversation);
     }
 
-    // ── Delete a conversation ─────────────────────────
-
-    @Transactional
-    public void deleteConversation(String id, String email) {
-        User user = getUser(email);
-        Conversation conversation = conversationRepository.findByIdAndUser(id, user)
-                .orElseThrow(() -> new RuntimeException("Conversation not found"));
-        conversationRepository.delete(conversation);
+    private ChatMessage newUserMessage(ChatRequest request) {
+        if (request.getMessage() != null) {
+            return new ChatMessage("user", request.getMessage());
+        }
+        return request.getMessages().get(request.getMessages().size() - 1);
     }
 
-    // ── Helper ────────────────────────────────────────
+    private ChatMessageEntity saveMessage(Conversation conversation, String role, String content) {
+        return saveTimer.record(() -> chatMessageRepository.save(ChatMessageEntity.builder()
+                .conversation(conversation)
+                .role(role)
+                .content(content)
+                .build()));
+    }
 
-    private User getUser(String email) {
-        return userRepository.findByEmail(email)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    // The principal already resolved the user, so a reference is enough for queries and new rows
+    private User getUser(Long userId) {
+        return userRepository.getReferenceById(userId);
     }
 }
@@ -0,0 +1,176 @@
+package com.pawfect.backend.service;
+
+import com.pawfect.backend.dto.Dtos.ChatMessage;
+import com.pawfect.backend.entity.Conversation;
+import com.pawfect.backend.repository.ConversationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
+
+/**
+ * Rolling summaries for long conversations ({@code app.chat.summary.*}). Once a conversation has
+ * {@code after-messages} messages its summary doesn't cover, all but the newest {@code keep-messages} are
+ * folded into the stored summary by the model, in the background. Prompts then send the summary in place
+ * of those messages, so their size stops growing with the conversation. Client-sent history only gets the
+ * summary if its leading messages are the ones the summary was made from. One summary per conversation
+ * runs at a time; if the pool is busy it is skipped and retried on a later turn.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConversationSummarizer {
+
+    private final LlmProvider llmProvider;
+    private final ConversationRepository conversationRepository;
+    private final ConversationContext conversationContext;
+    private final ThreadPoolExecutor summaryExecutor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.chat.summary.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.chat.summary.after-messages:20}")
+    private int afterMessages;
+
+    @Value("${app.chat.summary.keep-messages:8}")
+    private int keepMessages;
+
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private Timer summaryTimer;
+    private Counter skipped;
+    private Counter failed;
+    private Counter prefixMismatches;
+    private DistributionSummary tokensSaved;
+
+    @PostConstruct
+    void init() {
+        summaryTimer = Timer.builder("pawfect.chat.summary")
+                .description("Background summarization runs, including the model call")
+                .register(meterRegistry);
+        skipped = Counter.builder("pawfect.chat.summary.skipped")
+                .description("Summaries not started because the summary pool was full")
+                .register(meterRegistry);
+        failed = Counter.builder("pawfect.chat.summary.failed")
+                .description("Summarization runs that failed; the next turn tries again")
+                .register(meterRegistry);
+        prefixMismatches = Counter.builder("pawfect.chat.summary.prefix.mismatch")
+                .description("Client-sent histories whose leading messages don't match the ones the summary covers, sent in full")
+                .register(meterRegistry);
+        tokensSaved = DistributionSummary.builder("pawfect.chat.summary.tokens.saved")
+                .description("Estimated prompt tokens saved per turn by sending the summary instead of the messages it covers")
+                .baseUnit("tokens")
+                .register(meterRegistry);
+    }
+
+    // Client-sent history: the leading messages the stored summary covers are replaced by the summary, as long
+    // as they are the messages it was made from; an edited or trimmed history is sent as it came
+    public List<ChatMessage> condense(Conversation conversation, List<ChatMessage> messages) {
+        int covered = conversation.getSummaryMessageCount();
+        if (conversation.getSummary() == null || messages.size() <= covered) {
+            return messages;
+        }
+        if (!MessageDigest.isEqual(prefixHash(messages.subList(0, covered)), conversation.getSummaryPrefixHash())) {
+            prefixMismatches.increment();
+            return messages;
+        }
+        List<ChatMessage> prompt = new ArrayList<>(messages.size() - covered + 1);
+        prompt.add(ConversationContext.summaryMessage(conversation.getSummary()));
+        prompt.addAll(messages.subList(covered, messages.size()));
+        recordSavings(conversation.getSummary(), conversation.getSummarySourceTokens());
+        return prompt;
+    }
+
+    public void recordSavings(String summary, int summarizedTokens) {
+        if (summary != null) {
+            tokensSaved.record(Math.max(0,
+                    summarizedTokens - ConversationContext.estimateTokens(ConversationContext.summaryMessage(summary))));
+        }
+    }
+
+    // Starts a summary in the background once enough messages are unsummarized; `loader` reads the
+    // conversation as stored when the run starts
+    public void maybeSummarize(String conversationId, int unsummarized, Supplier<ConversationContext.Stored> loader) {
+        if (!enabled || unsummarized < afterMessages || !inFlight.add(conversationId)) {
+            return;
+        }
+        try {
+            summaryExecutor.execute(() -> {
+                try {
+                    summaryTimer.record(() -> summarize(conversationId, loader.get()));
+                } catch (RuntimeException e) {
+                    failed.increment();
+                    log.warn("Could not summarize conversation {}", conversationId, e);
+                } finally {
+                    inFlight.remove(conversationId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(conversationId);
+            skipped.increment();
+        }
+    }
+
+    private void summarize(String conversationId, ConversationContext.Stored stored) {
+        List<ChatMessage> messages = stored.messages();
+        int upTo = messages.size() - keepMessages;
+        if (messages.size() - stored.summarized() < afterMessages || upTo <= stored.summarized()) {
+            return; // another run already got here
+        }
+        List<ChatMessage> folded = messages.subList(stored.summarized(), upTo);
+        String summary = llmProvider.summarize(stored.summary(), folded);
+        if (summary == null || summary.isBlank()) {
+            throw new IllegalStateException("Model returned an empty summary");
+        }
+
+        int summarizedTokens = stored.summarizedTokens();
+        for (ChatMessage message : folded) {
+            summarizedTokens += ConversationContext.estimateTokens(message);
+        }
+        // Skipped if the conversation was deleted or another instance stored a summary in the meantime
+        byte[] prefixHash = prefixHash(messages.subList(0, upTo));
+        if (conversationRepository.updateSummary(conversationId, summary, upTo, summarizedTokens, prefixHash,
+                stored.summarized()) == 1) {
+            conversationContext.summarized(conversationId, summary, upTo, summarizedTokens);
+        }
+    }
+
+    // SHA-256 over each message's role and content, each length-prefixed so text can't shift between fields
+    static byte[] prefixHash(List<ChatMessage> messages) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JDK has it
+        }
+        for (ChatMessage message : messages) {
+            update(digest, message.getRole());
+            update(digest, message.getContent());
+        }
+        return digest.digest();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(value == null ? -1 : bytes.length).array());
+        digest.update(bytes);
+    }
+}
@@ -1,21 +1,46 @@
 package com.pawfect.backend.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.pawfect.backend.dto.Dtos.ChatMessage;
+import com.pawfect.backend.service.CompletionParser.Completion;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
-
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * The Groq provider: OpenAI-compatible chat completions, under the account's admission limits and a cap on
+ * concurrent calls.
+ */
 @Service
-public class GroqService {
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.llm.provider", havingValue = "groq", matchIfMissing = true)
+public class GroqService implements LlmProvider {
 
     @Value("${groq.api.url}")
     private String groqApiUrl;
@@ -26,10 +51,29 @@ public class GroqService {
     @Value("${groq.model}")
     private String model;
 
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    // Time allowed until the response headers arrive, per attempt. A body that stalls after them is cut off
+    // by groq.read-timeout-ms (UpstreamClient).
+    @Value("${groq.request-timeout-ms:60000}")
+    private long requestTimeoutMs;
+
+    private final CompletionCache completionCache;
+    private final UpstreamClient upstreamClient;
+    private final UpstreamGate gate;
+    private final MeterRegistry meterRegistry;
+
+    private Timer chatTimer;
+    private Timer streamTimer;
+    private Timer summaryTimer;
+    private DistributionSummary promptTokens;
+    private DistributionSummary completionTokens;
+    private URI upstreamUri;
+    private byte[] requestPrefix;
+    private byte[] summaryPrefix;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    private static final String SYSTEM_PROMPT = """
+    private static final int MAX_TOKENS = 1024;
+
+    static final String SYSTEM_PROMPT = """
             You are Pawfect, an advanced AI-powered virtual veterinary assistant.
             KEEP YOUR RESPONSE TO 400 WORDS MAXIMUM.
             MISSION:
@@ -191,43 +235,267 @@ public class GroqService {
             Pet safety and ethical responsibility always come first.
             """;
 
-    public String chat(List<ChatMessage> messages) {
+    private static final int SYSTEM_PROMPT_TOKENS = SYSTEM_PROMPT.length() / 4 + 4;
+
+    // Rolling summaries (ConversationSummarizer): the transcript goes in as one user message
+    static final String SUMMARY_PROMPT = """
+            You keep running notes on a conversation between a pet owner and Pawfect, a virtual veterinary assistant.
+            Merge the notes so far with the new messages into one updated set of notes, at most 200 words.
+            Keep: the pet's species, breed, age, weight and medical history; symptoms and how they changed;
+            the urgency levels and advice already given; questions that are still open.
+            Drop greetings, repetition and the structure of the replies. Write plain notes, without headings.
+            """;
+
+    private static final int SUMMARY_MAX_TOKENS = 400;
+    private static final int SUMMARY_PROMPT_TOKENS = SUMMARY_PROMPT.length() / 4 + 4;
+
+    @PostConstruct
+    void init() throws IOException {
+        upstreamUri = URI.create(groqApiUrl);
+        requestPrefix = encodePrefix(SYSTEM_PROMPT, MAX_TOKENS);
+        summaryPrefix = encodePrefix(SUMMARY_PROMPT, SUMMARY_MAX_TOKENS);
+
+        chatTimer = upstreamTimer("chat");
+        streamTimer = upstreamTimer("stream");
+        summaryTimer = upstreamTimer("summary");
+        promptTokens = tokenSummary("prompt");
+        completionTokens = tokenSummary("completion");
+    }
+
+    private Timer upstreamTimer(String mode) {
+        return Timer.builder("pawfect.upstream.duration")
+                .description("Upstream completion time, from request to the last byte of the reply")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary tokenSummary(String type) {
+        return DistributionSummary.builder("pawfect.upstream.tokens")
+                .description("Token usage reported by the provider per completion")
+                .baseUnit("tokens")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+    // An open circuit turns the chat away here too, before the caller saves anything
+    @Override
+    public UpstreamGate.Pass reserve(long promptTokens) {
+        upstreamClient.checkCircuit();
+        return gate.enter(SYSTEM_PROMPT_TOKENS + MAX_TOKENS + promptTokens);
+    }
+
+    @Override
+    public String chat(UpstreamGate.Pass pass, List<ChatMessage> messages) {
+        String cacheKey = completionCache.keyFor(model, SYSTEM_PROMPT, messages);
+        String cached = completionCache.get(cacheKey);
+        if (cached != null) {
+            pass.refund();
+            return cached;
+        }
+
+        String reply = complete(pass, requestPrefix, messages, chatTimer);
+        completionCache.put(cacheKey, reply);
+        return reply;
+    }
+
+    // Shares the chat limits, so summaries can't take capacity beyond what the account allows
+    @Override
+    public String summarize(String summary, List<ChatMessage> messages) {
+        StringBuilder transcript = new StringBuilder();
+        transcript.append("Notes so far:\n").append(summary != null ? summary : "(none)").append("\n\nNew messages:\n");
+        for (ChatMessage message : messages) {
+            transcript.append(message.getRole().equals("user") ? "Owner: " : "Pawfect: ")
+                    .append(message.getContent()).append("\n\n");
+        }
+        List<ChatMessage> request = List.of(new ChatMessage("user", transcript.toString()));
+        try (UpstreamGate.Pass pass = gate.enter(SUMMARY_PROMPT_TOKENS + SUMMARY_MAX_TOKENS + estimateTokens(request))) {
+            return complete(pass, summaryPrefix, request, summaryTimer);
+        }
+    }
+
+    // One non-streamed completion, settled with the usage the provider reports
+    private String complete(UpstreamGate.Pass pass, byte[] prefix, List<ChatMessage> messages, Timer timer) {
+        Timer.Sample sample = Timer.start(meterRegistry);
         try {
-            ObjectNode body = objectMapper.createObjectNode();
-            body.put("model", model);
-            body.put("max_tokens", 1024);
+            HttpResponse<InputStream> response = send(pass, buildRequest(prefix, messages, false), true);
+            Completion completion = CompletionParser.parse(objectMapper.getFactory(), response.body());
+            sample.stop(timer);
+            pass.settle(recordUsage(completion));
+            return completion.content();
+
+        } catch (HttpTimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "The assistant took too long to respond", e);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Failed to call Groq API: " + e.getMessage(), e);
+        }
+    }
 
-            ArrayNode messagesArray = objectMapper.createArrayNode();
+    // A call that got no reply gives its reservation back; one that did is settled by the caller
+    private HttpResponse<InputStream> send(UpstreamGate.Pass pass, HttpRequest request, boolean hedgeable) {
+        try {
+            return hedgeable ? upstreamClient.send(request, pass) : upstreamClient.send(request);
+        } catch (RuntimeException e) {
+            pass.refund();
+            throw e;
+        }
+    }
 
-            // Add system prompt first
-            ObjectNode systemMsg = objectMapper.createObjectNode();
-            systemMsg.put("role", "system");
-            systemMsg.put("content", SYSTEM_PROMPT);
-            messagesArray.add(systemMsg);
+    /**
+     * Requests a streamed completion and returns the content deltas as they arrive.
+     * The returned stream is backed by the open HTTP response — closing it cancels the upstream request,
+     * settles the reservation with the usage from the final chunk and closes the pass. If the provider stalls
+     * mid-reply for longer than the read timeout, iterating fails with an UncheckedIOException around
+     * HttpTimeoutException.
+     */
+    @Override
+    public Stream<String> chatStream(UpstreamGate.Pass pass, List<ChatMessage> messages) {
+        // A cached opener is replayed as a single delta; streamed replies aren't added to the cache
+        String cached = completionCache.get(completionCache.keyFor(model, SYSTEM_PROMPT, messages));
+        if (cached != null) {
+            pass.refund();
+            return Stream.of(cached).onClose(pass::close);
+        }
 
-            // Add full conversation history
+        Timer.Sample sample = Timer.start(meterRegistry);
+        HttpResponse<InputStream> response;
+        try {
+            response = send(pass, buildRequest(messages, true), false);
+        } catch (IOException e) {
+            pass.refund();
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Failed to call Groq API: " + e.getMessage(), e);
+        }
+        BufferedReader body = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8));
+        AtomicLong usage = new AtomicLong();
+        // The relay thread and a client disconnect can close the stream at the same time, and Stream.close
+        // doesn't stop both from running the handler
+        AtomicBoolean closed = new AtomicBoolean();
+        return body.lines()
+                .onClose(() -> {
+                    if (closed.compareAndSet(false, true)) {
+                        sample.stop(streamTimer);
+                        closeQuietly(body);
+                        pass.settle(usage.get()); // cut off before the final chunk: the full reservation stands
+                        pass.close();
+                    }
+                })
+                .map(String::strip)
+                .filter(line -> line.startsWith("data:"))
+                .map(line -> line.substring(5).strip())
+                .takeWhile(data -> !data.equals("[DONE]"))
+                .map(data -> extractDelta(data, usage))
+                .filter(delta -> !delta.isEmpty());
+    }
+
+    private static void closeQuietly(BufferedReader body) {
+        try {
+            body.close(); // cancels the upstream exchange if it is still running
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+    }
+
+    // Admission reserves this plus the system prompt and the full completion allowance, which the provider
+    // counts against tokens/min (chat turns bring their own estimate to reserve)
+    private static long estimateTokens(List<ChatMessage> messages) {
+        long tokens = 0;
+        for (ChatMessage msg : messages) {
+            tokens += ConversationContext.estimateTokens(msg);
+        }
+        return tokens;
+    }
+
+    HttpRequest buildRequest(List<ChatMessage> messages, boolean stream) throws IOException {
+        return buildRequest(requestPrefix, messages, stream);
+    }
+
+    private HttpRequest buildRequest(byte[] prefix, List<ChatMessage> messages, boolean stream) throws IOException {
+        return HttpRequest.newBuilder()
+                .uri(upstreamUri)
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + groqApiKey)
+                .POST(HttpRequest.BodyPublishers.concat(
+                        HttpRequest.BodyPublishers.ofByteArray(prefix),
+                        encodeMessages(messages, stream).publisher()))
+                .build();
+    }
+
+    // Model, max_tokens and the system message never change, so they are encoded once per kind of request.
+    // The object and messages array are left open for encodeMessages to continue.
+    private byte[] encodePrefix(String systemPrompt, int maxTokens) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(systemPrompt.length() + 128);
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        gen.writeStartObject();
+        gen.writeStringField("model", model);
+        gen.writeNumberField("max_tokens", maxTokens);
+        gen.writeArrayFieldStart("messages");
+        gen.writeStartObject();
+        gen.writeStringField("role", "system");
+        gen.writeStringField("content", systemPrompt);
+        gen.writeEndObject();
+        gen.flush(); // not closed — closing would also close the open array and object
+        return out.toByteArray();
+    }
+
+    // Conversation history written straight to UTF-8 bytes, then the closing brackets
+    private BodyBuffer encodeMessages(List<ChatMessage> messages, boolean stream) throws IOException {
+        // Sized for mostly-ASCII text with some headroom for escapes and multi-byte characters
+        int estimate = 32;
+        for (ChatMessage msg : messages) {
+            int length = msg.getContent().length();
+            estimate += length + (length >> 3) + 40;
+        }
+        BodyBuffer out = new BodyBuffer(estimate);
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            gen.setRootValueSeparator(null);
             for (ChatMessage msg : messages) {
-                ObjectNode msgNode = objectMapper.createObjectNode();
-                msgNode.put("role", msg.getRole());
-                msgNode.put("content", msg.getContent());
-                messagesArray.add(msgNode);
+                gen.writeRaw(',');
+                gen.writeStartObject();
+                gen.writeStringField("role", msg.getRole());
+                gen.writeStringField("content", msg.getContent());
+                gen.writeEndObject();
+            }
+            gen.writeRaw(']');
+            if (stream) {
+                gen.writeRaw(",\"stream\":true");
             }
+            gen.writeRaw('}');
+        }
+        return out;
+    }
+
+    // Publishes the written bytes in place instead of copying them out with toByteArray()
+    private static final class BodyBuffer extends ByteArrayOutputStream {
 
-            body.set("messages", messagesArray);
+        BodyBuffer(int size) {
+            super(size);
+        }
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(groqApiUrl))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + groqApiKey)
-                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
-                    .build();
+        HttpRequest.BodyPublisher publisher() {
+            return HttpRequest.BodyPublishers.ofByteArray(buf, 0, count);
+        }
+    }
 
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            JsonNode responseJson = objectMapper.readTree(response.body());
-            return responseJson.path("choices").path(0).path("message").path("content").asText();
+    // Each SSE chunk carries a partial message under choices[0].delta.content; the last one also carries usage
+    private String extractDelta(String chunk, AtomicLong usage) {
+        try {
+            Completion completion = CompletionParser.parse(objectMapper.getFactory(), chunk);
+            long tokens = recordUsage(completion);
+            if (tokens > 0) {
+                usage.set(tokens);
+            }
+            return completion.content();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to call Groq API: " + e.getMessage(), e);
+    // Returns the total the provider reported, 0 if this response or chunk carried no usage
+    private long recordUsage(Completion completion) {
+        if (completion.promptTokens() > 0 || completion.completionTokens() > 0) {
+            promptTokens.record(completion.promptTokens());
+            completionTokens.record(completion.completionTokens());
         }
+        return completion.promptTokens() + completion.completionTokens();
     }
 }
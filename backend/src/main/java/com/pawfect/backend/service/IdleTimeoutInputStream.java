@@ -0,0 +1,102 @@
+package com.pawfect.backend.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response body that gives up when the provider stops sending. If no bytes arrive for {@code idle}, a
+ * watchdog closes the underlying stream, which wakes a blocked read; it then fails with
+ * HttpTimeoutException instead of waiting for ever. Closing the body cancels the watchdog.
+ */
+final class IdleTimeoutInputStream extends FilterInputStream {
+
+    private final ScheduledExecutorService watchdog;
+    private final long idleNanos;
+
+    private volatile long lastRead = System.nanoTime();
+    private volatile boolean closed;
+    private volatile boolean timedOut;
+    private volatile Future<?> check;
+
+    IdleTimeoutInputStream(InputStream in, ScheduledExecutorService watchdog, Duration idle) {
+        super(in);
+        this.watchdog = watchdog;
+        this.idleNanos = idle.toNanos();
+        schedule(idleNanos);
+    }
+
+    @Override
+    public int read() throws IOException {
+        try {
+            int b = super.read();
+            lastRead = System.nanoTime();
+            return b;
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        try {
+            int n = super.read(b, off, len);
+            lastRead = System.nanoTime();
+            return n;
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Future<?> pending = check;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        super.close();
+    }
+
+    // One check is pending at a time: each one either times the body out or schedules the next
+    private void schedule(long delayNanos) {
+        try {
+            check = watchdog.schedule(this::check, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down; nothing left to watch for
+        }
+    }
+
+    private void check() {
+        if (closed) {
+            return;
+        }
+        long idle = System.nanoTime() - lastRead;
+        if (idle < idleNanos) {
+            schedule(idleNanos - idle);
+            return;
+        }
+        timedOut = true;
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // the reader fails either way
+        }
+    }
+
+    private IOException failure(IOException e) {
+        if (!timedOut) {
+            return e;
+        }
+        HttpTimeoutException timeout = new HttpTimeoutException(
+                "No data from the provider for " + TimeUnit.NANOSECONDS.toMillis(idleNanos) + " ms");
+        timeout.initCause(e);
+        return timeout;
+    }
+}
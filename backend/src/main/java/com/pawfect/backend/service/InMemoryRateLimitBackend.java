@@ -0,0 +1,53 @@
+package com.pawfect.backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-node limiter state: one {@link AtomicLong} per key holding the GCRA "theoretical arrival time",
+ * updated with a CAS so there is no lock on the request path. Keys are held in a size-bounded Caffeine
+ * map and dropped once idle; an idle key's bucket has refilled anyway, so evicting it changes nothing.
+ * Each limiter gets its own instance (see RateLimitConfig), so one's keys can't push out another's.
+ */
+public class InMemoryRateLimitBackend implements RateLimitBackend {
+
+    private final Cache<String, AtomicLong> arrivals;
+
+    public InMemoryRateLimitBackend(long maxKeys, long idleTtlMinutes) {
+        this.arrivals = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(Duration.ofMinutes(idleTtlMinutes))
+                .build();
+    }
+
+    @Override
+    public Duration tryAcquire(String key, int burst, Duration interval) {
+        long step = interval.toNanos();
+        long tolerance = step * burst;
+        AtomicLong arrival = arrivals.get(key, k -> new AtomicLong(System.nanoTime()));
+        while (true) {
+            long now = System.nanoTime();
+            long current = arrival.get();
+            long next = (current - now > 0 ? current : now) + step;
+            long excess = next - now - tolerance;
+            if (excess > 0) {
+                return Duration.ofNanos(excess);
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return Duration.ZERO;
+            }
+        }
+    }
+
+    // Moving the arrival time before "now" is harmless: tryAcquire never starts from earlier than now
+    @Override
+    public void release(String key, Duration interval) {
+        AtomicLong arrival = arrivals.getIfPresent(key);
+        if (arrival != null) {
+            arrival.addAndGet(-interval.toNanos());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.pawfect.backend.service;
+
+import com.pawfect.backend.dto.Dtos.ChatMessage;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The model behind the chat. {@code app.llm.provider} picks the implementation: {@code groq}
+ * (GroqService, the default) or {@code stub} (StubLlmProvider, canned replies for load tests).
+ * Failures surface as ResponseStatusException, which the controllers pass on as the HTTP status.
+ *
+ * <p>A chat turn first reserves upstream capacity, before anything is saved, then makes the call with that
+ * reservation. The caller closes the pass once the call is over.
+ */
+public interface LlmProvider {
+
+    // Waits for capacity for a reply to a prompt of about `promptTokens`, or throws 429/503
+    UpstreamGate.Pass reserve(long promptTokens);
+
+    // The assistant's reply to `messages`; the provider adds its own system prompt
+    String chat(UpstreamGate.Pass pass, List<ChatMessage> messages);
+
+    // Same as chat, as content deltas while they are generated. Closing the stream cancels the reply and
+    // closes the pass.
+    Stream<String> chatStream(UpstreamGate.Pass pass, List<ChatMessage> messages);
+
+    // Folds `messages` into the running summary (null for the first one) and returns the new summary
+    String summarize(String summary, List<ChatMessage> messages);
+}
@@ -0,0 +1,81 @@
+package com.pawfect.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits failed logins per client IP and per email from that IP. The email limit is keyed by the IP too, so
+ * someone guessing at an account from elsewhere can't lock its owner out; spreading guesses over many IPs
+ * is what the per-IP limit is for. Each attempt reserves a failure before the password
+ * is checked, so parallel guesses can't all slip past, and gives it back unless the password was wrong.
+ * A blocked attempt is turned away before any hashing, so guessing costs us no BCrypt time.
+ */
+@Component
+public class LoginThrottle {
+
+    private final RateLimitBackend backend;
+    private final boolean enabled;
+    private final int emailBurst;
+    private final Duration emailInterval;
+    private final int ipBurst;
+    private final Duration ipInterval;
+    private final LongAdder throttled = new LongAdder();
+
+    public LoginThrottle(RateLimitBackend loginThrottleBackend,
+                         @Value("${app.auth.login-throttle.enabled:true}") boolean enabled,
+                         @Value("${app.auth.login-throttle.email.failures-per-minute:1}") int emailPerMinute,
+                         @Value("${app.auth.login-throttle.email.burst:5}") int emailBurst,
+                         @Value("${app.auth.login-throttle.ip.failures-per-minute:10}") int ipPerMinute,
+                         @Value("${app.auth.login-throttle.ip.burst:20}") int ipBurst) {
+        this.backend = loginThrottleBackend;
+        this.enabled = enabled;
+        this.emailBurst = emailBurst;
+        this.emailInterval = Duration.ofMinutes(1).dividedBy(emailPerMinute);
+        this.ipBurst = ipBurst;
+        this.ipInterval = Duration.ofMinutes(1).dividedBy(ipPerMinute);
+    }
+
+    // Throws 429 with Retry-After while either the IP or the email from it is out of failed attempts
+    public void acquire(String clientIp, String email) {
+        if (!enabled) {
+            return;
+        }
+        Duration wait = backend.tryAcquire(ipKey(clientIp), ipBurst, ipInterval);
+        if (wait.isZero()) {
+            wait = backend.tryAcquire(emailKey(clientIp, email), emailBurst, emailInterval);
+            if (!wait.isZero()) {
+                backend.release(ipKey(clientIp), ipInterval);
+            }
+        }
+        if (!wait.isZero()) {
+            throttled.increment();
+            throw new RetryAfterException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many failed sign-in attempts, try again later", wait);
+        }
+    }
+
+    // The attempt didn't fail on the password (it succeeded, or the server turned it away)
+    public void release(String clientIp, String email) {
+        if (enabled) {
+            backend.release(ipKey(clientIp), ipInterval);
+            backend.release(emailKey(clientIp, email), emailInterval);
+        }
+    }
+
+    public long throttledCount() {
+        return throttled.sum();
+    }
+
+    private static String ipKey(String clientIp) {
+        return "login-ip:" + clientIp;
+    }
+
+    private static String emailKey(String clientIp, String email) {
+        return "login-email:" + clientIp + ":" + (email == null ? "" : email.trim().toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,312 @@
+package com.pawfect.backend.service;
+
+import com.pawfect.backend.entity.ChatMessageEntity;
+import com.pawfect.backend.entity.Conversation;
+import com.pawfect.backend.entity.TimeOrderedIds;
+import com.pawfect.backend.repository.ChatMessageRepository;
+import com.pawfect.backend.repository.ConversationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Optional write-behind for chat messages ({@code app.chat.write-behind.enabled}). Turns enqueue their
+ * messages instead of writing them; a single writer thread inserts them in JDBC batches and bumps each
+ * conversation's {@code updatedAt} once per batch.
+ *
+ * <p>Guarantees: a message is written within {@code max-lag-ms} of being queued unless the database is
+ * failing; producers block (then get 503) while the queue is full; and on shutdown the queue is drained
+ * before the datasource closes when {@code flush-on-shutdown} is set, with messages that arrive after that
+ * written directly. Messages still queued when the process dies are lost, which is the trade for taking the
+ * inserts off the request path.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageWriteBehind {
+
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    private final EntityManager entityManager;
+    private final ConversationRepository conversationRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.chat.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.chat.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.chat.write-behind.batch-size:50}")
+    private int batchSize;
+
+    // Longest a queued message waits for its batch to fill before it is written anyway
+    @Value("${app.chat.write-behind.max-lag-ms:100}")
+    private long maxLagMs;
+
+    // How long a producer blocks on a full queue before the turn fails with 503
+    @Value("${app.chat.write-behind.enqueue-timeout-ms:2000}")
+    private long enqueueTimeoutMs;
+
+    @Value("${app.chat.write-behind.flush-on-shutdown:true}")
+    private boolean flushOnShutdown;
+
+    @Value("${app.chat.write-behind.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMs;
+
+    private BlockingQueue<PendingMessage> queue;
+    // Queued or in-flight messages by id, until their transaction commits — read by history loads
+    private final Map<String, PendingMessage> unflushed = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+    private Thread writer;
+
+    private Timer flushTimer;
+    private DistributionSummary batchSizes;
+    private Counter dropped;
+
+    /** A message accepted for writing; id and timestamp are fixed at enqueue time. */
+    public record PendingMessage(String id, String conversationId, String role, String content,
+                                 LocalDateTime createdAt, long enqueuedNanos) {
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        flushTimer = Timer.builder("pawfect.db.write-behind.flush")
+                .description("Write-behind batch transactions, including commit")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("pawfect.db.write-behind.batch")
+                .description("Messages per write-behind batch")
+                .register(meterRegistry);
+        dropped = Counter.builder("pawfect.db.write-behind.dropped")
+                .description("Messages that could not be written")
+                .register(meterRegistry);
+        Gauge.builder("pawfect.db.write-behind.queue", queue, BlockingQueue::size)
+                .description("Messages waiting to be written")
+                .register(meterRegistry);
+
+        running = true;
+        writer = Thread.ofPlatform().name("message-writer").start(this::run);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Queues a message, blocking while the queue is full (backpressure) up to the enqueue timeout; returns its id.
+    // The running check and the queueing happen under the shutdown lock's read side, so none lands in the queue
+    // after stop() and misses the final drain; a message that comes after stop() is written here instead.
+    public String enqueue(String conversationId, String role, String content) {
+        PendingMessage message = new PendingMessage(TimeOrderedIds.nextString(), conversationId, role, content,
+                LocalDateTime.now(), System.nanoTime());
+        shutdownLock.readLock().lock();
+        try {
+            if (running) {
+                queue(message);
+                return message.id();
+            }
+        } finally {
+            shutdownLock.readLock().unlock();
+        }
+        transactionTemplate.executeWithoutResult(status -> write(List.of(message)));
+        return message.id();
+    }
+
+    private void queue(PendingMessage message) {
+        unflushed.put(message.id(), message);
+        try {
+            if (!queue.offer(message, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                unflushed.remove(message.id());
+                throw new RetryAfterException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Too many messages waiting to be saved, try again shortly", Duration.ofMillis(enqueueTimeoutMs));
+            }
+        } catch (InterruptedException e) {
+            unflushed.remove(message.id());
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing a message", e);
+        }
+    }
+
+    // Messages of a conversation that may not be visible in the database yet, oldest first
+    public List<PendingMessage> pending(String conversationId) {
+        if (!enabled || unflushed.isEmpty()) {
+            return List.of();
+        }
+        List<PendingMessage> pending = new ArrayList<>();
+        for (PendingMessage message : unflushed.values()) {
+            if (message.conversationId().equals(conversationId)) {
+                pending.add(message);
+            }
+        }
+        pending.sort(Comparator.comparing(PendingMessage::createdAt));
+        return pending;
+    }
+
+    // Forgets queued messages of a conversation that is being deleted
+    public void discard(String conversationId) {
+        if (enabled) {
+            unflushed.values().removeIf(message -> message.conversationId().equals(conversationId));
+        }
+    }
+
+    // Takes back a queued message. False once it has been written, so the caller deletes it instead; one
+    // withdrawn while its batch is being written is deleted by the writer afterwards.
+    public boolean withdraw(String messageId) {
+        return enabled && unflushed.remove(messageId) != null;
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        shutdownLock.writeLock().lock(); // waits out enqueues that saw running
+        try {
+            running = false;
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+        writer.join(shutdownTimeoutMs); // the writer stops after its current batch unless draining
+        int remaining = queue.size();
+        if (remaining > 0) {
+            log.warn("Shutting down with {} chat message(s) not written", remaining);
+        }
+    }
+
+    // ── Writer ────────────────────────────────────────
+
+    private void run() {
+        long maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMs);
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (running || (flushOnShutdown && !queue.isEmpty())) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Linger for a fuller batch, but never past the oldest message's lag budget
+                long deadline = first.enqueuedNanos() + maxLagNanos;
+                while (batch.size() < batchSize && running) {
+                    long wait = deadline - System.nanoTime();
+                    PendingMessage next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Chat message writer interrupted with {} message(s) queued", queue.size());
+                return;
+            } catch (RuntimeException e) {
+                log.error("Chat message writer failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) throws InterruptedException {
+        // Skip messages of conversations deleted while they were queued
+        List<PendingMessage> live = batch.stream().filter(m -> unflushed.containsKey(m.id())).toList();
+        if (live.isEmpty()) {
+            return;
+        }
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    flushTimer.record(() -> transactionTemplate.executeWithoutResult(status -> write(live)));
+                    batchSizes.record(live.size());
+                    return;
+                } catch (RuntimeException e) {
+                    if (attempt >= MAX_FLUSH_ATTEMPTS) {
+                        log.warn("Batch of {} chat message(s) failed, writing them one by one", live.size(), e);
+                        break;
+                    }
+                    Thread.sleep(100L << attempt);
+                }
+            }
+            // One bad row (e.g. its conversation was deleted mid-batch) shouldn't take the others with it
+            for (PendingMessage message : live) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> write(List.of(message)));
+                } catch (RuntimeException e) {
+                    dropped.increment();
+                    log.warn("Dropping chat message {} for conversation {}", message.id(), message.conversationId(), e);
+                }
+            }
+        } finally {
+            deleteWithdrawn(live);
+        }
+    }
+
+    // Done with the batch: messages no longer listed as unflushed were withdrawn (or their conversation deleted)
+    // while it was being written, so whatever of them got written goes again
+    private void deleteWithdrawn(List<PendingMessage> written) {
+        List<String> withdrawn = new ArrayList<>();
+        for (PendingMessage message : written) {
+            if (unflushed.remove(message.id()) == null) {
+                withdrawn.add(message.id());
+            }
+        }
+        if (withdrawn.isEmpty()) {
+            return;
+        }
+        try {
+            chatMessageRepository.deleteAllByIds(withdrawn);
+        } catch (RuntimeException e) {
+            log.warn("Could not delete {} withdrawn chat message(s)", withdrawn.size(), e);
+        }
+    }
+
+    // Inserts are batched by Hibernate (hibernate.jdbc.batch_size); updatedAt is bumped once per conversation
+    private void write(List<PendingMessage> messages) {
+        Map<String, LocalDateTime> touches = new HashMap<>();
+        for (PendingMessage message : messages) {
+            entityManager.persist(ChatMessageEntity.builder()
+                    .id(message.id())
+                    .conversation(entityManager.getReference(Conversation.class, message.conversationId()))
+                    .role(message.role())
+                    .content(message.content())
+                    .createdAt(message.createdAt())
+                    .build());
+            touches.merge(message.conversationId(), message.createdAt(), (a, b) -> a.isAfter(b) ? a : b);
+        }
+        entityManager.flush();
+        touches.forEach(conversationRepository::touch);
+    }
+}
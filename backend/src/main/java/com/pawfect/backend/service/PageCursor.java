@@ -0,0 +1,60 @@
+package com.pawfect.backend.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Keyset position (timestamp + id tie-breaker) handed to clients as an opaque string.
+ */
+record PageCursor(LocalDateTime at, String id) {
+
+    private static final String OFFSET_PREFIX = "offset|";
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((at + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static PageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Missing separator");
+            }
+            String id = raw.substring(separator + 1);
+            UUID.fromString(id); // ids are uuid columns; reject anything else before it reaches a query
+            return new PageCursor(LocalDateTime.parse(raw.substring(0, separator)), id);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    // Search results are ordered by rank, which has no keyset to resume from; their cursor carries an offset
+    static String encodeOffset(int offset) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((OFFSET_PREFIX + offset).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int decodeOffset(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!raw.startsWith(OFFSET_PREFIX)) {
+                throw new IllegalArgumentException("Not an offset cursor");
+            }
+            int offset = Integer.parseInt(raw.substring(OFFSET_PREFIX.length()));
+            if (offset < 0) {
+                throw new IllegalArgumentException("Negative offset");
+            }
+            return offset;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+}
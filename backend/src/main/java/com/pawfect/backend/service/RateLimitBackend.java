@@ -0,0 +1,24 @@
+package com.pawfect.backend.service;
+
+import java.time.Duration;
+
+/**
+ * Storage for per-key rate limit state. The in-memory implementation limits each node on its own;
+ * a shared store (e.g. Redis running the same GCRA step as a script) can replace it so that
+ * several nodes enforce one limit.
+ */
+public interface RateLimitBackend {
+
+    /**
+     * Takes one request for {@code key} from a bucket that allows {@code burst} requests at once and
+     * refills one every {@code interval}. Returns {@link Duration#ZERO} when the request is allowed,
+     * otherwise how long until the next one would be.
+     */
+    Duration tryAcquire(String key, int burst, Duration interval);
+
+    /**
+     * Gives back one request taken by {@link #tryAcquire}, for callers that reserve before they know
+     * whether the request counts.
+     */
+    void release(String key, Duration interval);
+}
@@ -0,0 +1,32 @@
+package com.pawfect.backend.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+
+/**
+ * A 429/503-style rejection that tells the client when to try again via {@code Retry-After}.
+ */
+public class RetryAfterException extends ResponseStatusException {
+
+    private final Duration retryAfter;
+
+    public RetryAfterException(HttpStatus status, String reason, Duration retryAfter) {
+        super(status, reason);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        // Whole seconds, rounded up so clients never retry early
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000)));
+        return headers;
+    }
+}
@@ -0,0 +1,216 @@
+package com.pawfect.backend.service;
+
+import com.pawfect.backend.dto.Dtos.ChatMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * In-process stand-in for the model ({@code app.llm.provider=stub}), so the rest of the chat pipeline can be
+ * load tested without an API key. The time to the first token is log-normal with the configured median and
+ * p99; the reply then arrives at {@code tokens-per-second}, one word per token. {@code error-rate} of the
+ * calls fail with 502 when the first token is due.
+ *
+ * <p>Only the model is replaced: calls go through the same UpstreamGate as Groq's (admission limits and the
+ * concurrency cap), and settle with the prompt estimate plus the tokens sent, as a provider's usage would.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.llm.provider", havingValue = "stub")
+public class StubLlmProvider implements LlmProvider {
+
+    private static final String[] WORDS = ("your pet may be a little unsettled so keep an eye on eating drinking "
+            + "and energy over the next day offer water and a quiet place to rest and call a vet if anything "
+            + "gets worse or new signs appear").split(" ");
+
+    // p99 of the standard normal distribution
+    private static final double Z_99 = 2.326;
+
+    @Value("${app.llm.stub.first-token-median-ms:500}")
+    private long firstTokenMedianMs;
+
+    @Value("${app.llm.stub.first-token-p99-ms:2000}")
+    private long firstTokenP99Ms;
+
+    @Value("${app.llm.stub.tokens-per-second:100}")
+    private double tokensPerSecond;
+
+    @Value("${app.llm.stub.reply-tokens:300}")
+    private int replyTokens;
+
+    @Value("${app.llm.stub.error-rate:0}")
+    private double errorRate;
+
+    private final UpstreamGate gate;
+    private final MeterRegistry meterRegistry;
+
+    private double mu;
+    private double sigma;
+    private long tokenIntervalNanos;
+    private Timer chatTimer;
+    private Timer streamTimer;
+    private Timer summaryTimer;
+
+    @PostConstruct
+    void init() {
+        long median = Math.max(1, firstTokenMedianMs);
+        mu = Math.log(median);
+        sigma = Math.log((double) Math.max(firstTokenP99Ms, median) / median) / Z_99;
+        tokenIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / tokensPerSecond);
+
+        // Same meters as GroqService, so dashboards read the same under a load test
+        chatTimer = upstreamTimer("chat");
+        streamTimer = upstreamTimer("stream");
+        summaryTimer = upstreamTimer("summary");
+    }
+
+    private Timer upstreamTimer(String mode) {
+        return Timer.builder("pawfect.upstream.duration")
+                .description("Upstream completion time, from request to the last byte of the reply")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public UpstreamGate.Pass reserve(long promptTokens) {
+        return gate.enter(promptTokens + replyTokens);
+    }
+
+    @Override
+    public String chat(UpstreamGate.Pass pass, List<ChatMessage> messages) {
+        return chatTimer.record(() -> {
+            StringBuilder text = new StringBuilder();
+            Reply reply = new Reply(replyTokens);
+            try {
+                reply.forEachRemaining(text::append);
+            } finally {
+                reply.settle(pass, messages);
+            }
+            return text.toString().strip();
+        });
+    }
+
+    @Override
+    public Stream<String> chatStream(UpstreamGate.Pass pass, List<ChatMessage> messages) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Reply reply = new Reply(replyTokens);
+        AtomicBoolean closed = new AtomicBoolean(); // closed by the relay and a disconnect alike, as in GroqService
+        return StreamSupport.stream(Spliterators.spliterator(reply, replyTokens, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    reply.cancelled = true;
+                    if (closed.compareAndSet(false, true)) {
+                        sample.stop(streamTimer);
+                        reply.settle(pass, messages);
+                        pass.close();
+                    }
+                });
+    }
+
+    @Override
+    public String summarize(String summary, List<ChatMessage> messages) {
+        try (UpstreamGate.Pass pass = gate.enter(promptTokens(messages) + replyTokens)) {
+            return summaryTimer.record(() -> {
+                Reply reply = new Reply(0);
+                try {
+                    reply.awaitFirstToken();
+                } finally {
+                    reply.settle(pass, messages);
+                }
+                return (summary != null ? summary + "\n" : "") + "Stub notes on " + messages.size() + " more message(s).";
+            });
+        }
+    }
+
+    private static long promptTokens(List<ChatMessage> messages) {
+        long tokens = 0;
+        for (ChatMessage message : messages) {
+            tokens += ConversationContext.estimateTokens(message);
+        }
+        return tokens;
+    }
+
+    // Time to the first token for one call, drawn from the log-normal distribution
+    private long firstTokenNanos() {
+        double millis = Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+        return (long) (millis * 1_000_000);
+    }
+
+    // The reply's tokens, each handed out when it is due; calls that are chosen to fail throw instead of
+    // returning the first one
+    private final class Reply implements Iterator<String> {
+
+        private final int tokens;
+        private final long start = System.nanoTime();
+        private final long firstToken = firstTokenNanos();
+        private final boolean fails = ThreadLocalRandom.current().nextDouble() < errorRate;
+        private volatile int next; // read by settle on whichever thread closes the stream
+        private volatile boolean cancelled;
+
+        Reply(int tokens) {
+            this.tokens = tokens;
+        }
+
+        // A failed call gives its reservation back, as a Groq call without a reply does
+        void settle(UpstreamGate.Pass pass, List<ChatMessage> messages) {
+            if (fails) {
+                pass.refund();
+                return;
+            }
+            pass.settle(promptTokens(messages) + next);
+        }
+
+        void awaitFirstToken() {
+            sleepUntil(start + firstToken);
+            if (fails) {
+                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Stub provider failed (injected error)");
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == 0) {
+                awaitFirstToken();
+            }
+            return !cancelled && next < tokens;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            sleepUntil(start + firstToken + next * tokenIntervalNanos);
+            return WORDS[next++ % WORDS.length] + " ";
+        }
+
+        private void sleepUntil(long deadline) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while generating a stub reply", e);
+            }
+        }
+    }
+}
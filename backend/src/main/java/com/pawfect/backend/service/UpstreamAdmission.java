@@ -0,0 +1,228 @@
+package com.pawfect.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for upstream LLM calls, mirroring the provider's per-minute limits with two
+ * token buckets (requests/min and tokens/min) so bursts are smoothed out instead of failing together.
+ *
+ * <p>Calls that can't be admitted right away wait in a bounded queue ordered by estimated token cost,
+ * so short follow-up turns aren't stuck behind huge contexts. A call is rejected with 429 and
+ * {@code Retry-After} when the queue is full or its wait deadline passes.
+ */
+@Component
+public class UpstreamAdmission {
+
+    private final boolean enabled;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final Bucket requests;
+    private final Bucket tokens;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+            Comparator.comparingLong(Waiter::cost).thenComparingLong(Waiter::sequence));
+    private long sequence;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+
+    public UpstreamAdmission(@Value("${groq.admission.enabled:true}") boolean enabled,
+                             @Value("${groq.admission.requests-per-minute:300}") long requestsPerMinute,
+                             @Value("${groq.admission.tokens-per-minute:300000}") long tokensPerMinute,
+                             @Value("${groq.admission.max-queue:100}") int maxQueue,
+                             @Value("${groq.admission.max-wait-ms:10000}") long maxWaitMs) {
+        this.enabled = enabled;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.requests = new Bucket(requestsPerMinute);
+        this.tokens = new Bucket(tokensPerMinute);
+    }
+
+    /**
+     * Blocks until a call of the given estimated token cost fits both buckets, or throws a 429.
+     * Returns the number of tokens reserved, to be passed back to {@link #settle}.
+     */
+    public long admit(long estimatedTokens) {
+        if (!enabled) {
+            return 0;
+        }
+        long cost = Math.min(estimatedTokens, (long) tokens.capacity);
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (queue.isEmpty() && tryConsume(cost, start)) {
+                admitted.increment();
+                return cost;
+            }
+            if (queue.size() >= maxQueue) {
+                throw reject(cost, start);
+            }
+
+            Waiter waiter = new Waiter(cost, sequence++);
+            queue.add(waiter);
+            long deadline = start + maxWaitNanos;
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    if (queue.peek() == waiter && tryConsume(cost, now)) {
+                        queue.remove(waiter);
+                        changed.signalAll();
+                        admitted.increment();
+                        totalWaitNanos.add(now - start);
+                        return cost;
+                    }
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        queue.remove(waiter);
+                        changed.signalAll();
+                        throw reject(cost, now);
+                    }
+                    Waiter head = queue.peek();
+                    changed.awaitNanos(Math.min(remaining, Math.max(
+                            TimeUnit.MILLISECONDS.toNanos(1), nanosUntilAvailable(head.cost(), now))));
+                }
+            } catch (InterruptedException e) {
+                queue.remove(waiter);
+                changed.signalAll();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for upstream capacity", e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Admits a call only if it fits both buckets right now and nobody is queued, never waiting or rejecting.
+    // Returns the tokens reserved, or -1 when there is no spare capacity.
+    public long tryAdmit(long estimatedTokens) {
+        if (!enabled) {
+            return 0;
+        }
+        long cost = Math.min(estimatedTokens, (long) tokens.capacity);
+        lock.lock();
+        try {
+            if (queue.isEmpty() && tryConsume(cost, System.nanoTime())) {
+                admitted.increment();
+                return cost;
+            }
+            return -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Corrects the token bucket once the provider reports the real usage of an admitted call
+    public void settle(long reservedTokens, long actualTokens) {
+        if (!enabled || actualTokens <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            tokens.level += reservedTokens - actualTokens;
+            tokens.level = Math.min(tokens.level, tokens.capacity);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Gives back the whole reservation (tokens and the request) of a call that never reached the provider
+    public void refund(long reservedTokens) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            requests.level = Math.min(requests.level + 1, requests.capacity);
+            tokens.level = Math.min(tokens.level + reservedTokens, tokens.capacity);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long admittedCount() {
+        return admitted.sum();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    // Cumulative time admitted calls spent queued
+    public Duration totalWaitTime() {
+        return Duration.ofNanos(totalWaitNanos.sum());
+    }
+
+    private boolean tryConsume(long cost, long now) {
+        requests.refill(now);
+        tokens.refill(now);
+        if (requests.level >= 1 && tokens.level >= cost) {
+            requests.level -= 1;
+            tokens.level -= cost;
+            return true;
+        }
+        return false;
+    }
+
+    private long nanosUntilAvailable(long cost, long now) {
+        requests.refill(now);
+        tokens.refill(now);
+        return Math.max(requests.nanosUntil(1), tokens.nanosUntil(cost));
+    }
+
+    private RetryAfterException reject(long cost, long now) {
+        rejected.increment();
+        return new RetryAfterException(HttpStatus.TOO_MANY_REQUESTS,
+                "Too many requests, try again shortly", Duration.ofNanos(nanosUntilAvailable(cost, now)));
+    }
+
+    private record Waiter(long cost, long sequence) {
+    }
+
+    // Refills continuously at capacity per minute; guarded by the admission lock
+    private static final class Bucket {
+
+        private final double capacity;
+        private final double perNano;
+        private double level;
+        private long refilledAt = System.nanoTime();
+
+        Bucket(long perMinute) {
+            this.capacity = perMinute;
+            this.perNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.level = perMinute;
+        }
+
+        void refill(long now) {
+            level = Math.min(capacity, level + (now - refilledAt) * perNano);
+            refilledAt = now;
+        }
+
+        long nanosUntil(double amount) {
+            return level >= amount ? 0 : (long) Math.ceil((amount - level) / perNano);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.pawfect.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * HTTP transport to the model provider: connect timeout, an idle timeout on response bodies, retries with
+ * exponential backoff and full jitter on 429/5xx (honoring {@code Retry-After}), a circuit breaker that
+ * fails fast while the provider is down, and optional request hedging.
+ *
+ * <p>A hedge is a second copy of a completion sent once the first has been waiting longer than the recent p95
+ * time to headers. It goes through the same {@link UpstreamGate} as every other call — its own permit and
+ * admission reservation, taken without waiting — and is skipped when either is short, so hedging never
+ * takes the provider past the configured concurrency or per-minute limits.
+ *
+ * <p>Failures surface as status exceptions — 504 on timeout, 503 while the circuit is open, the
+ * provider keeps rate-limiting or the calling thread is interrupted, 502 otherwise — instead of a generic 500.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UpstreamClient {
+
+    private final MeterRegistry meterRegistry;
+    private final UpstreamGate gate;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${groq.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    // Longest gap allowed between bytes of a response body, once the headers are in
+    @Value("${groq.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    @Value("${groq.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${groq.retry.initial-backoff-ms:250}")
+    private long initialBackoffMs;
+
+    @Value("${groq.retry.max-backoff-ms:4000}")
+    private long maxBackoffMs;
+
+    @Value("${groq.circuit.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${groq.circuit.open-ms:30000}")
+    private long circuitOpenMs;
+
+    // Fire a second, identical request if the first hasn't answered by the recorded p95 time to headers
+    @Value("${groq.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    // The hedge delay until enough successful calls have been timed to trust their p95
+    @Value("${groq.hedge.delay-ms:8000}")
+    private long hedgeDelayMs;
+
+    @Value("${groq.hedge.min-samples:50}")
+    private long hedgeMinSamples;
+
+    private HttpClient httpClient;
+    private CircuitBreaker circuitBreaker;
+    private ScheduledThreadPoolExecutor readWatchdog;
+    private HttpResponse.BodyHandler<InputStream> bodyHandler;
+    private Timer successfulHeaders;
+    private Counter hedgesSent;
+    private Counter hedgesSkipped;
+
+    @PostConstruct
+    void init() {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs));
+        if (virtualThreads) {
+            builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        httpClient = builder.build();
+        circuitBreaker = new CircuitBreaker(failureThreshold, Duration.ofMillis(circuitOpenMs));
+
+        readWatchdog = new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().name("upstream-read-watchdog").daemon().factory());
+        readWatchdog.setRemoveOnCancelPolicy(true); // bodies usually finish long before their check is due
+        Duration readTimeout = Duration.ofMillis(readTimeoutMs);
+        bodyHandler = info -> HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(),
+                body -> new IdleTimeoutInputStream(body, readWatchdog, readTimeout));
+
+        successfulHeaders = ttfbTimer("200");
+        hedgesSent = hedgeCounter("sent");
+        hedgesSkipped = hedgeCounter("skipped");
+    }
+
+    @PreDestroy
+    void stop() {
+        readWatchdog.shutdownNow();
+    }
+
+    /**
+     * Sends the request, retrying transient failures, and returns a 200 response whose body the
+     * caller must close. Reading the body fails with HttpTimeoutException if it stalls for longer than
+     * the read timeout.
+     */
+    public HttpResponse<InputStream> send(HttpRequest request) {
+        return send(request, null);
+    }
+
+    /**
+     * Same as {@link #send(HttpRequest)}, for a call made under {@code pass}, which may be hedged when
+     * hedging is enabled (so not for streamed replies, whose body is the reply).
+     */
+    public HttpResponse<InputStream> send(HttpRequest request, UpstreamGate.Pass pass) {
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                throw new RetryAfterException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "The assistant is temporarily unavailable", circuitBreaker.remainingOpen());
+            }
+            boolean lastAttempt = attempt >= maxAttempts;
+
+            HttpResponse<InputStream> response;
+            Timer.Sample sample = Timer.start(meterRegistry);
+            try {
+                response = pass != null && hedgeEnabled ? sendHedged(request, pass) : httpClient.send(request, bodyHandler);
+                recordHeaders(sample, String.valueOf(response.statusCode()));
+            } catch (HttpTimeoutException e) {
+                recordHeaders(sample, "timeout");
+                circuitBreaker.onFailure();
+                if (lastAttempt) {
+                    throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "The assistant took too long to respond", e);
+                }
+                pause(backoff(attempt), attempt, "timeout");
+                continue;
+            } catch (IOException e) {
+                recordHeaders(sample, "error");
+                circuitBreaker.onFailure();
+                if (lastAttempt) {
+                    throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Failed to call Groq API: " + e.getMessage(), e);
+                }
+                pause(backoff(attempt), attempt, e.getClass().getSimpleName());
+                continue;
+            } catch (InterruptedException e) {
+                // Every way out of an attempt settles it with the breaker; an unsettled half-open probe would
+                // keep the circuit rejecting calls for good
+                recordHeaders(sample, "interrupted");
+                circuitBreaker.onFailure();
+                Thread.currentThread().interrupt();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "The request was cancelled", e);
+            } catch (RuntimeException e) {
+                recordHeaders(sample, "error"); // e.g. the hedge race being cancelled
+                circuitBreaker.onFailure();
+                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Failed to call Groq API: " + e.getMessage(), e);
+            }
+
+            int status = response.statusCode();
+            if (status == 200) {
+                circuitBreaker.onSuccess();
+                return response;
+            }
+
+            if (status == 429 || status >= 500) {
+                // A 429 means the provider is up, just busy — only 5xx counts against the circuit
+                if (status == 429) {
+                    circuitBreaker.onSuccess();
+                } else {
+                    circuitBreaker.onFailure();
+                }
+                String error = readError(response);
+                Duration retryAfter = retryAfter(response);
+                Duration wait = retryAfter != null ? retryAfter : backoff(attempt);
+                if (lastAttempt || wait.toMillis() > maxBackoffMs) {
+                    log.warn("Groq API returned {} after {} attempt(s): {}", status, attempt, error);
+                    throw new RetryAfterException(HttpStatus.SERVICE_UNAVAILABLE,
+                            "The assistant is busy, try again shortly", retryAfter != null ? retryAfter : Duration.ofMillis(maxBackoffMs));
+                }
+                pause(wait, attempt, String.valueOf(status));
+                continue;
+            }
+
+            // Any other status is a request problem that retrying won't fix
+            circuitBreaker.onSuccess();
+            String error = readError(response);
+            log.warn("Groq API returned {}: {}", status, error);
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Groq API returned " + status);
+        }
+    }
+
+    public boolean isCircuitOpen() {
+        return circuitBreaker.isOpen();
+    }
+
+    // Throws the same 503 send would while the circuit is open, so a caller can turn a chat away before doing
+    // any work for it. Once the open period is over, calls pass and send picks the probe.
+    public void checkCircuit() {
+        Duration remaining = circuitBreaker.remainingOpen();
+        if (!remaining.isZero()) {
+            throw new RetryAfterException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "The assistant is temporarily unavailable", remaining);
+        }
+    }
+
+    // Time to response headers per attempt (connect + TLS + time to first byte; the JDK client doesn't split them)
+    private void recordHeaders(Timer.Sample sample, String outcome) {
+        sample.stop(ttfbTimer(outcome));
+    }
+
+    // The p95 over the recent window (not the histogram, which never forgets) is what the hedge delay follows
+    private Timer ttfbTimer(String outcome) {
+        return Timer.builder("pawfect.upstream.ttfb")
+                .description("Time until the provider's response headers arrive, per attempt")
+                .tag("outcome", outcome)
+                .publishPercentiles(0.95)
+                .register(meterRegistry);
+    }
+
+    private Counter hedgeCounter(String outcome) {
+        return Counter.builder("pawfect.upstream.hedges")
+                .description("Hedged requests sent, or skipped because no permit or admission capacity was free")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    // Recent p95 time to headers of successful calls, or the configured delay until enough have been timed
+    long hedgeDelayMs() {
+        if (successfulHeaders.count() >= hedgeMinSamples) {
+            for (ValueAtPercentile percentile : successfulHeaders.takeSnapshot().percentileValues()) {
+                if (percentile.percentile() == 0.95 && percentile.value() > 0) {
+                    return Math.max(1, (long) percentile.value(TimeUnit.MILLISECONDS));
+                }
+            }
+        }
+        return hedgeDelayMs;
+    }
+
+    // Whichever copy loses is cancelled but keeps its full reservation: the provider bills what it generated
+    // before the cancel, and a non-streamed reply is mostly generated by the time its headers would arrive
+    private HttpResponse<InputStream> sendHedged(HttpRequest request, UpstreamGate.Pass pass)
+            throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<InputStream>> primary = httpClient.sendAsync(request, bodyHandler);
+        try {
+            return primary.get(hedgeDelayMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Slow primary — race a second request against it, if there is room for one
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+
+        UpstreamGate.Pass hedgePass = gate.tryEnterAlongside(pass);
+        if (hedgePass == null) {
+            hedgesSkipped.increment();
+            try {
+                return primary.get();
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            } finally {
+                primary.cancel(true); // a no-op once it has completed
+            }
+        }
+        hedgesSent.increment();
+
+        // The first 2xx wins. An error status only stands in for one once both copies are done, so a fast 503
+        // from one copy can't beat a slow success from the other.
+        CompletableFuture<HttpResponse<InputStream>> hedge = httpClient.sendAsync(request, bodyHandler);
+        CompletableFuture<HttpResponse<InputStream>> winner = new CompletableFuture<>();
+        AtomicReference<HttpResponse<InputStream>> fallback = new AtomicReference<>();
+        AtomicInteger finished = new AtomicInteger();
+        for (CompletableFuture<HttpResponse<InputStream>> attempt : List.of(primary, hedge)) {
+            attempt.whenComplete((response, error) -> {
+                if (response != null && response.statusCode() / 100 == 2) {
+                    if (!winner.complete(response)) {
+                        closeQuietly(response.body()); // lost the race
+                    }
+                } else if (response != null && !fallback.compareAndSet(null, response)) {
+                    closeQuietly(response.body()); // the first error response is the one kept
+                }
+                if (finished.incrementAndGet() == 2) {
+                    HttpResponse<InputStream> kept = fallback.get();
+                    if (kept != null) {
+                        if (!winner.complete(kept)) {
+                            closeQuietly(kept.body()); // a success won
+                        }
+                    } else if (error != null) {
+                        winner.completeExceptionally(error); // a no-op if the other copy succeeded
+                    }
+                }
+            });
+        }
+        try {
+            return winner.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            primary.cancel(true);
+            hedge.cancel(true);
+            hedgePass.close(); // one copy is left running, under the caller's permit
+        }
+    }
+
+    // Exponential backoff with full jitter: uniform in [0, min(max, initial * 2^(attempt-1))]
+    private Duration backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    // Only the delay-seconds form is used by the provider; HTTP-dates fall back to backoff
+    private static Duration retryAfter(HttpResponse<?> response) {
+        return response.headers().firstValue("Retry-After")
+                .map(String::strip)
+                .filter(value -> value.matches("\\d+(\\.\\d+)?"))
+                .map(value -> Duration.ofMillis((long) (Double.parseDouble(value) * 1000)))
+                .orElse(null);
+    }
+
+    private static void pause(Duration wait, int attempt, String cause) {
+        log.debug("Retrying Groq API call after {} ({} ms, attempt {})", cause, wait.toMillis(), attempt);
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "The request was cancelled", e);
+        }
+    }
+
+    private static String readError(HttpResponse<InputStream> response) {
+        try (InputStream body = response.body()) {
+            return new String(body.readNBytes(2048), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "<unreadable body>";
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        return e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException ignored) {
+            // already abandoned
+        }
+    }
+}
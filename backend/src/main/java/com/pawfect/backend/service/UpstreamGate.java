@@ -0,0 +1,115 @@
+package com.pawfect.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The way into a model call: admission against the per-minute limits (UpstreamAdmission), then one of a
+ * fixed number of concurrency permits. Chat turns enter before anything is written, so a 429 or 503 here
+ * leaves nothing behind for the client's retry to duplicate.
+ */
+@Component
+public class UpstreamGate {
+
+    // Permits free up as soon as any in-flight call finishes, so a short hint is enough
+    static final Duration PERMIT_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final UpstreamAdmission admission;
+    private final int maxConcurrentRequests;
+    private final Semaphore permits;
+    private final long acquireTimeoutMs;
+
+    // Caps in-flight upstream calls so a burst of chats can't blow through Groq's rate limits
+    public UpstreamGate(UpstreamAdmission admission,
+                        @Value("${groq.max-concurrent-requests:32}") int maxConcurrentRequests,
+                        @Value("${groq.acquire-timeout-ms:30000}") long acquireTimeoutMs) {
+        this.admission = admission;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    /**
+     * Blocks until a call of the given estimated token cost is admitted and holds a permit, or throws
+     * 429/503 with {@code Retry-After} and nothing held. The caller closes the returned pass once the call is over.
+     */
+    public Pass enter(long estimatedTokens) {
+        long reserved = admission.admit(estimatedTokens);
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new RetryAfterException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Too many chats in progress, try again shortly", PERMIT_RETRY_AFTER);
+            }
+        } catch (InterruptedException e) {
+            admission.refund(reserved);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to call the model", e);
+        } catch (RuntimeException e) {
+            admission.refund(reserved);
+            throw e;
+        }
+        return new Pass(reserved);
+    }
+
+    /**
+     * A pass for a hedged copy of the call holding {@code primary}: the same reservation and a permit of its
+     * own, taken only if both are free right now. Returns null otherwise, and the call goes unhedged.
+     */
+    public Pass tryEnterAlongside(Pass primary) {
+        long reserved = admission.tryAdmit(primary.reserved);
+        if (reserved < 0) {
+            return null;
+        }
+        if (!permits.tryAcquire()) {
+            admission.refund(reserved);
+            return null;
+        }
+        return new Pass(reserved);
+    }
+
+    // Calls holding a permit right now
+    public int inFlight() {
+        return maxConcurrentRequests - permits.availablePermits();
+    }
+
+    /**
+     * One admitted call. The reservation is settled with the provider's reported usage or refunded if the call
+     * never reached the provider, whichever comes first; closing frees the permit. Both are safe to repeat and
+     * to race (a stream is closed by its relay and by a client disconnect alike).
+     */
+    public final class Pass implements AutoCloseable {
+
+        private final long reserved;
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Pass(long reserved) {
+            this.reserved = reserved;
+        }
+
+        public void settle(long actualTokens) {
+            if (settled.compareAndSet(false, true)) {
+                admission.settle(reserved, actualTokens);
+            }
+        }
+
+        public void refund() {
+            if (settled.compareAndSet(false, true)) {
+                admission.refund(reserved);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+-- Schema as Hibernate's ddl-auto created it before migrations were introduced.
+-- Existing databases are baselined at this version (spring.flyway.baseline-on-migrate) and skip it.
+
+CREATE TABLE users (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    email      VARCHAR(255) NOT NULL UNIQUE,
+    name       VARCHAR(255) NOT NULL,
+    password   VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP(6)
+);
+
+CREATE TABLE conversations (
+    id         VARCHAR(36) PRIMARY KEY,
+    user_id    BIGINT       NOT NULL REFERENCES users (id),
+    title      VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP(6),
+    updated_at TIMESTAMP(6)
+);
+
+CREATE TABLE messages (
+    id              VARCHAR(36) PRIMARY KEY,
+    conversation_id VARCHAR(36)  NOT NULL REFERENCES conversations (id),
+    role            VARCHAR(255) NOT NULL,
+    content         TEXT         NOT NULL,
+    created_at      TIMESTAMP(6)
+);
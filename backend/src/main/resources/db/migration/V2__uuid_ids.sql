@@ -0,0 +1,30 @@
+-- Converts conversation and message ids from VARCHAR(36) to native uuid (16 bytes instead of 37).
+-- Existing ids keep their value; new rows get time-ordered (UUIDv7) ids from the application.
+-- Harmless on a database that was already converted by hand.
+--
+-- ALTER COLUMN ... TYPE rewrites both tables and their indexes under an exclusive lock. For a large
+-- messages table, schedule a maintenance window (roughly a minute per 10M rows on modest hardware).
+
+-- The foreign key name was generated by Hibernate, so look it up rather than hard-coding it
+DO $$
+DECLARE
+    fk text;
+BEGIN
+    FOR fk IN
+        SELECT conname FROM pg_constraint
+        WHERE conrelid = 'messages'::regclass AND contype = 'f'
+          AND confrelid = 'conversations'::regclass
+    LOOP
+        EXECUTE format('ALTER TABLE messages DROP CONSTRAINT %I', fk);
+    END LOOP;
+END $$;
+
+ALTER TABLE conversations
+    ALTER COLUMN id TYPE uuid USING id::uuid;
+
+ALTER TABLE messages
+    ALTER COLUMN id TYPE uuid USING id::uuid,
+    ALTER COLUMN conversation_id TYPE uuid USING conversation_id::uuid;
+
+ALTER TABLE messages
+    ADD CONSTRAINT fk_messages_conversation FOREIGN KEY (conversation_id) REFERENCES conversations (id);
@@ -0,0 +1,12 @@
+-- Indexes for the chat access patterns. Each serves both the filter and the ORDER BY, so reads are a
+-- bounded index range scan with no sort:
+--   conversations by user, newest first — listing and keyset pages (updated_at, id as tie-breaker)
+--   messages by conversation in time order — history loads, latest-N and scroll-back pages
+-- Built CONCURRENTLY so a large table isn't write-locked; Flyway runs this script outside a transaction.
+-- IF NOT EXISTS because ddl-auto may already have created them from the entity annotations.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_conversations_user_updated
+    ON conversations (user_id, updated_at DESC, id DESC);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_messages_conversation_created
+    ON messages (conversation_id, created_at, id);
@@ -0,0 +1,7 @@
+-- Let the database remove a conversation's messages as part of the conversation's DELETE, instead of
+-- Hibernate loading them and deleting them row by row. The scan goes through idx_messages_conversation_created.
+
+ALTER TABLE messages
+    DROP CONSTRAINT IF EXISTS fk_messages_conversation,
+    ADD CONSTRAINT fk_messages_conversation
+        FOREIGN KEY (conversation_id) REFERENCES conversations (id) ON DELETE CASCADE;
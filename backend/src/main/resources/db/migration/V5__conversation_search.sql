@@ -0,0 +1,56 @@
+-- Full-text search over a user's conversations (GET /api/conversations/search).
+--
+-- Each conversation keeps one search document: its title (weight A) plus the text of every message.
+-- Ranking then reads one row per conversation instead of every matching message, which keeps search
+-- fast for users with a long history. Messages keep their own vector only to pick the snippet.
+--
+-- Adding the generated column rewrites the messages table and the backfill rewrites conversations;
+-- on a large database run this in a quiet period (one to two minutes per million messages on modest hardware).
+
+ALTER TABLE messages
+    ADD COLUMN search_vector tsvector GENERATED ALWAYS AS (to_tsvector('english'::regconfig, content)) STORED;
+
+ALTER TABLE conversations ADD COLUMN search_vector tsvector NOT NULL DEFAULT '';
+
+UPDATE conversations c
+SET search_vector = setweight(to_tsvector('english', c.title), 'A')
+        || coalesce((SELECT to_tsvector('english', string_agg(m.content, ' ' ORDER BY m.created_at, m.id))
+                     FROM messages m
+                     WHERE m.conversation_id = c.id), '');
+
+CREATE INDEX idx_conversations_search ON conversations USING gin (search_vector);
+
+-- New conversations start with their title
+CREATE FUNCTION conversations_search_title() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    NEW.search_vector := setweight(to_tsvector('english', NEW.title), 'A');
+    RETURN NEW;
+END
+$$;
+
+CREATE TRIGGER conversations_search_title
+    BEFORE INSERT ON conversations
+    FOR EACH ROW EXECUTE FUNCTION conversations_search_title();
+
+-- New messages are appended to their conversation's document, once per conversation per INSERT statement
+-- (a batched multi-row insert updates each conversation once). Past ~256 kB, positions are dropped
+-- from the appended text so a very long conversation can't reach the 1 MB tsvector limit.
+CREATE FUNCTION conversations_search_append() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    UPDATE conversations c
+    SET search_vector = CASE
+            WHEN pg_column_size(c.search_vector) < 262144 THEN c.search_vector || added.vector
+            ELSE c.search_vector || strip(added.vector)
+        END
+    FROM (SELECT conversation_id, to_tsvector('english', string_agg(content, ' ' ORDER BY created_at, id)) AS vector
+          FROM new_messages
+          GROUP BY conversation_id) added
+    WHERE c.id = added.conversation_id;
+    RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER messages_search_append
+    AFTER INSERT ON messages
+    REFERENCING NEW TABLE AS new_messages
+    FOR EACH STATEMENT EXECUTE FUNCTION conversations_search_append();
@@ -0,0 +1,28 @@
+-- Archive tier for old conversations (ConversationArchive, ArchiveCompactor).
+--
+-- Once a conversation has been untouched for a while, its messages are packed into one deflated blob per
+-- conversation and deleted from messages. Reads merge the archived messages with any newer hot ones, so
+-- a conversation that is picked up again keeps working; the next compaction folds the new ones in.
+-- The conversation's search document stays in conversations.search_vector, so archived conversations
+-- still show up in search (without a message snippet).
+
+CREATE TABLE message_archives (
+    conversation_id uuid PRIMARY KEY REFERENCES conversations (id) ON DELETE CASCADE,
+    message_count   integer   NOT NULL,
+    -- what the archived rows took up in messages (pg_column_size, so after TOAST compression)
+    source_bytes    bigint    NOT NULL,
+    packed_bytes    bigint    NOT NULL,
+    payload         bytea     NOT NULL,
+    archived_at     timestamp NOT NULL
+);
+
+-- The payload is already compressed; keep TOAST from trying again
+ALTER TABLE message_archives ALTER COLUMN payload SET STORAGE EXTERNAL;
+
+-- Set when a conversation's messages were last archived; newer hot messages bump updated_at past it
+ALTER TABLE conversations ADD COLUMN archived_at timestamp;
+
+-- Compaction candidates, oldest first. Archived conversations drop out of the index until they are touched
+-- again, so each pass only walks conversations that still have hot messages.
+CREATE INDEX idx_conversations_archivable ON conversations (updated_at)
+    WHERE archived_at IS NULL OR archived_at < updated_at;
@@ -0,0 +1,10 @@
+-- Rolling summaries for long conversations (ConversationSummarizer).
+--
+-- The first summary_message_count messages of a conversation (in time order) are condensed into summary;
+-- prompts send the summary in their place. summary_source_tokens is the estimated prompt size of those
+-- messages, which the summary's own size is measured against. Constant defaults, so no table rewrite.
+
+ALTER TABLE conversations
+    ADD COLUMN summary               text,
+    ADD COLUMN summary_message_count integer NOT NULL DEFAULT 0,
+    ADD COLUMN summary_source_tokens integer NOT NULL DEFAULT 0;
@@ -0,0 +1,8 @@
+-- Fingerprint of the messages a rolling summary covers (ConversationSummarizer).
+--
+-- SHA-256 over the role and content of the first summary_message_count messages. Client-sent history only
+-- has its leading messages replaced by the summary if they hash the same; summaries stored before this
+-- column existed have none and are not substituted until the next one lands. Nullable, so no table rewrite.
+
+ALTER TABLE conversations
+    ADD COLUMN summary_prefix_hash bytea;
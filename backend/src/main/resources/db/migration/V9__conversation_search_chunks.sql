@@ -0,0 +1,171 @@
+-- Moves the search documents of V5 into a table of bounded chunks, indexed per user.
+--
+-- V5 kept one document per conversation and rewrote all of it (and its GIN entries) on every message
+-- insert, so a long conversation got slower to write with each turn, and the updates contended with
+-- touches of the conversation row. The GIN index also covered only the document, so a common word
+-- bitmap-scanned every user's matches before the user filter ran.
+--
+-- Now each conversation has a run of chunks in conversation_search. Every chunk holds the title (weight A)
+-- plus the text of about 16 kB of consecutive messages, in order. An insert appends to the conversation's
+-- latest chunk, or starts a new one once that is full, so a message costs the same to index at any
+-- conversation length. The index leads with user_id (btree_gin), so a search only reads the searching
+-- user's matches.
+--
+-- A chunk also lists its messages and where each one's words end in the document, so the positions of a
+-- match tell which message to quote as the snippet without parsing any message text at query time. That
+-- works the same for archived conversations, whose messages are no longer in the table, so
+-- messages.search_vector goes. Dropping the columns doesn't rewrite either table; the space is reused as
+-- rows are updated or vacuumed. The backfill reads messages once (2 min 44 s for 600k messages on one
+-- vCPU) and writes only the new table.
+
+-- A trusted extension (Postgres 13+), so the database owner can create it
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+
+DROP TRIGGER messages_search_append ON messages;
+DROP FUNCTION conversations_search_append();
+DROP TRIGGER conversations_search_title ON conversations;
+DROP FUNCTION conversations_search_title();
+DROP INDEX idx_conversations_search;
+ALTER TABLE conversations DROP COLUMN search_vector;
+ALTER TABLE messages DROP COLUMN search_vector;
+
+-- Position of the last word in a document: `a || b` shifts the positions of b by this much of a
+CREATE FUNCTION search_vector_end(v tsvector) RETURNS integer LANGUAGE sql IMMUTABLE PARALLEL SAFE AS $$
+    SELECT coalesce(max(p), 0) FROM unnest(v) u, unnest(u.positions) p
+$$;
+
+-- Message ends counted from 0, moved to where their messages land in a chunk
+CREATE FUNCTION conversation_search_shift(ends integer[], offset_by integer) RETURNS integer[]
+    LANGUAGE sql IMMUTABLE AS $$
+    SELECT coalesce(array_agg(e + offset_by ORDER BY i), '{}') FROM unnest(ends) WITH ORDINALITY x(e, i)
+$$;
+
+-- Concatenates documents in the aggregate's ORDER BY, each one's positions following the last
+CREATE AGGREGATE search_vector_agg(tsvector) (SFUNC = tsvector_concat, STYPE = tsvector, INITCOND = '');
+
+CREATE TABLE conversation_search (
+    conversation_id uuid     NOT NULL REFERENCES conversations (id) ON DELETE CASCADE,
+    chunk           integer  NOT NULL,
+    user_id         bigint   NOT NULL,
+    -- bytes of message text in the chunk (octet_length), which decides when the next chunk starts
+    content_bytes   integer  NOT NULL,
+    -- created_at of the chunk's first and last message; null while it only holds the title
+    messages_from   timestamp,
+    messages_to     timestamp,
+    search_vector   tsvector NOT NULL,
+    -- the chunk's messages in order, and where the title (first element) and each message end in
+    -- search_vector: message i has the weight D positions after message_ends[i] up to message_ends[i + 1]
+    message_ids     uuid[]   NOT NULL DEFAULT '{}',
+    message_ends    integer[] NOT NULL,
+    PRIMARY KEY (conversation_id, chunk)
+);
+
+-- Chunk 0 of every conversation starts with its title; existing messages are cut into runs of about 16 kB
+-- (chunk boundaries can differ slightly from the trigger's, the size bound is the same)
+INSERT INTO conversation_search (conversation_id, chunk, user_id, content_bytes, search_vector, message_ends)
+SELECT c.id, 0, c.user_id, 0, t.vector, ARRAY[search_vector_end(t.vector)]
+FROM conversations c, LATERAL (SELECT setweight(to_tsvector('english', c.title), 'A') AS vector) t;
+
+INSERT INTO conversation_search (conversation_id, chunk, user_id, content_bytes, messages_from, messages_to,
+                                 search_vector, message_ids, message_ends)
+SELECT m.conversation_id, m.chunk, c.user_id, sum(m.bytes), min(m.created_at), max(m.created_at),
+       t.vector || search_vector_agg(m.vector ORDER BY m.created_at, m.id),
+       array_agg(m.id ORDER BY m.created_at, m.id),
+       search_vector_end(t.vector) || array_agg(search_vector_end(t.vector) + m.ends ORDER BY m.created_at, m.id)
+FROM (SELECT m.*, CAST(sum(search_vector_end(m.vector))
+                           OVER (PARTITION BY m.conversation_id, m.chunk ORDER BY m.created_at, m.id) AS integer) AS ends
+      FROM (SELECT conversation_id, id, created_at, octet_length(content) AS bytes,
+                   to_tsvector('english', content) AS vector,
+                   (sum(octet_length(content)) OVER (PARTITION BY conversation_id ORDER BY created_at, id)
+                        - octet_length(content)) / 16384 AS chunk
+            FROM messages) m) m
+JOIN conversations c ON c.id = m.conversation_id
+CROSS JOIN LATERAL (SELECT setweight(to_tsvector('english', c.title), 'A') AS vector) t
+GROUP BY m.conversation_id, m.chunk, c.user_id, t.vector
+ON CONFLICT (conversation_id, chunk) DO UPDATE
+    SET content_bytes = EXCLUDED.content_bytes,
+        messages_from = EXCLUDED.messages_from,
+        messages_to = EXCLUDED.messages_to,
+        search_vector = EXCLUDED.search_vector,
+        message_ids = EXCLUDED.message_ids,
+        message_ends = EXCLUDED.message_ends;
+
+CREATE INDEX idx_conversation_search_user ON conversation_search USING gin (user_id, search_vector);
+
+-- New conversations start with a chunk holding their title
+CREATE FUNCTION conversation_search_start() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    INSERT INTO conversation_search (conversation_id, chunk, user_id, content_bytes, search_vector, message_ends)
+    SELECT n.id, 0, n.user_id, 0, t.vector, ARRAY[search_vector_end(t.vector)]
+    FROM new_conversations n, LATERAL (SELECT setweight(to_tsvector('english', n.title), 'A') AS vector) t;
+    RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER conversation_search_start
+    AFTER INSERT ON conversations
+    REFERENCING NEW TABLE AS new_conversations
+    FOR EACH STATEMENT EXECUTE FUNCTION conversation_search_start();
+
+-- New messages are appended to their conversation's latest chunk while it has room, else they start the
+-- next one; once per conversation per INSERT statement, so a batched insert lands in one chunk. Both
+-- branches read the latest chunks from the same snapshot, in one statement. Two inserts racing to start
+-- the same chunk merge into it (the repeated title is weight A, so it is never taken for a message).
+-- `ends` are the added messages' ends counted from the start of the batch, shifted by wherever it lands.
+CREATE FUNCTION conversation_search_append() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    WITH added AS (
+        SELECT conversation_id, sum(bytes) AS bytes, min(created_at) AS first_at, max(created_at) AS last_at,
+               search_vector_agg(vector ORDER BY created_at, id) AS vector,
+               array_agg(id ORDER BY created_at, id) AS ids,
+               array_agg(ends ORDER BY created_at, id) AS ends
+        FROM (SELECT n.*, CAST(sum(search_vector_end(n.vector))
+                                   OVER (PARTITION BY n.conversation_id ORDER BY n.created_at, n.id) AS integer) AS ends
+              FROM (SELECT conversation_id, id, created_at, octet_length(content) AS bytes,
+                           to_tsvector('english', content) AS vector
+                    FROM new_messages) n) n
+        GROUP BY conversation_id
+    ),
+    latest AS (
+        SELECT DISTINCT ON (s.conversation_id) s.conversation_id, s.chunk, s.user_id, s.content_bytes
+        FROM conversation_search s
+        JOIN added a ON a.conversation_id = s.conversation_id
+        ORDER BY s.conversation_id, s.chunk DESC
+    ),
+    appended AS (
+        UPDATE conversation_search s
+        SET content_bytes = s.content_bytes + a.bytes,
+            messages_from = coalesce(s.messages_from, a.first_at),
+            messages_to = greatest(s.messages_to, a.last_at),
+            search_vector = s.search_vector || a.vector,
+            message_ids = s.message_ids || a.ids,
+            message_ends = s.message_ends || conversation_search_shift(a.ends, search_vector_end(s.search_vector))
+        FROM latest l
+        JOIN added a ON a.conversation_id = l.conversation_id
+        WHERE s.conversation_id = l.conversation_id AND s.chunk = l.chunk AND l.content_bytes < 16384
+    )
+    INSERT INTO conversation_search AS s (conversation_id, chunk, user_id, content_bytes, messages_from,
+                                          messages_to, search_vector, message_ids, message_ends)
+    SELECT l.conversation_id, l.chunk + 1, l.user_id, a.bytes, a.first_at, a.last_at, t.vector || a.vector,
+           a.ids, search_vector_end(t.vector) || conversation_search_shift(a.ends, search_vector_end(t.vector))
+    FROM latest l
+    JOIN added a ON a.conversation_id = l.conversation_id
+    JOIN conversations c ON c.id = l.conversation_id
+    CROSS JOIN LATERAL (SELECT setweight(to_tsvector('english', c.title), 'A') AS vector) t
+    WHERE l.content_bytes >= 16384
+    ON CONFLICT (conversation_id, chunk) DO UPDATE
+        SET content_bytes = s.content_bytes + EXCLUDED.content_bytes,
+            messages_from = least(s.messages_from, EXCLUDED.messages_from),
+            messages_to = greatest(s.messages_to, EXCLUDED.messages_to),
+            search_vector = s.search_vector || EXCLUDED.search_vector,
+            message_ids = s.message_ids || EXCLUDED.message_ids,
+            message_ends = s.message_ends || conversation_search_shift(EXCLUDED.message_ends[2:],
+                                                                       search_vector_end(s.search_vector));
+    RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER conversation_search_append
+    AFTER INSERT ON messages
+    REFERENCING NEW TABLE AS new_messages
+    FOR EACH STATEMENT EXECUTE FUNCTION conversation_search_append();
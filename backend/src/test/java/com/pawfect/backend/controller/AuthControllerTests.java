@@ -0,0 +1,95 @@
+package com.pawfect.backend.controller;
+
+import com.pawfect.backend.service.AuthService;
+import com.pawfect.backend.service.InMemoryRateLimitBackend;
+import com.pawfect.backend.service.LoginThrottle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.autoconfigure.web.embedded.TomcatWebServerFactoryCustomizer;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The login throttle sees the client's address when requests come through a proxy: an embedded Tomcat set up
+ * from application.properties the way Spring Boot does, with every request arriving from loopback (an internal
+ * proxy address) and only X-Forwarded-For telling the clients apart.
+ */
+class AuthControllerTests {
+
+    private final LoginThrottle throttle = new LoginThrottle(new InMemoryRateLimitBackend(1000, 15), true, 1, 5, 10, 20);
+    private final AuthService authService = new AuthService(null, null, null, authentication -> {
+        throw new BadCredentialsException("Bad credentials"); // every attempt is a failed guess
+    }, null, throttle);
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    private WebServer server;
+
+    @Configuration
+    @EnableWebMvc
+    static class Mvc {
+    }
+
+    @BeforeEach
+    void start() throws IOException {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new ResourcePropertySource(new ClassPathResource("application.properties")));
+        ServerProperties serverProperties = Binder.get(environment).bind("server", ServerProperties.class).get();
+        TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory(0);
+        new TomcatWebServerFactoryCustomizer(environment, serverProperties).customize(factory);
+
+        GenericWebApplicationContext context = new GenericWebApplicationContext();
+        AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+        context.registerBean(Mvc.class);
+        context.registerBean(AuthController.class, () -> new AuthController(authService));
+        server = factory.getWebServer(servletContext ->
+                servletContext.addServlet("dispatcher", new DispatcherServlet(context)).addMapping("/"));
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    private int login(String clientIp) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/api/auth/login"))
+                .header("Content-Type", "application/json")
+                .header("X-Forwarded-For", clientIp)
+                .POST(HttpRequest.BodyPublishers.ofString("{\"email\":\"owner@example.com\",\"password\":\"guess\"}"))
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Test
+    void throttleKeysOnTheForwardedClientIp() throws IOException, InterruptedException {
+        int status = 0;
+        for (int i = 0; i < 10 && status != 429; i++) {
+            status = login("203.0.113.7");
+        }
+        assertThat(status).isEqualTo(429);
+
+        // Same proxy, same email, another client: not throttled
+        assertThat(login("198.51.100.1")).isNotEqualTo(429);
+        assertThat(login("203.0.113.7")).isEqualTo(429);
+    }
+}
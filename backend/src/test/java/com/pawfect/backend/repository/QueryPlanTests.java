@@ -0,0 +1,285 @@
+package com.pawfect.backend.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the Flyway migrations against an embedded Postgres and checks that the hot chat queries are
+ * served by the indexes — no sequential scan, and no sort for keyset pages — so a dropped or reshaped index fails the build.
+ * Also checks that search documents stay bounded in size however long a conversation gets.
+ * The SQL mirrors the JPQL in {@link ConversationRepository} and {@link ChatMessageRepository}.
+ */
+class QueryPlanTests {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static EmbeddedPostgres postgres;
+    private static Connection connection;
+    private static UUID conversationId;
+
+    @BeforeAll
+    static void migrateAndSeed() throws Exception {
+        postgres = EmbeddedPostgres.start();
+        Flyway.configure()
+                .dataSource(postgres.getPostgresDatabase())
+                .configuration(Map.of("flyway.postgresql.transactional.lock", "false")) // as in application.properties
+                .load()
+                .migrate();
+        connection = postgres.getPostgresDatabase().getConnection();
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    INSERT INTO users (email, name, password, created_at)
+                    SELECT 'user' || n || '@example.com', 'User ' || n, 'x', now()
+                    FROM generate_series(1, 50) n""");
+            statement.execute("""
+                    INSERT INTO conversations (id, user_id, title, created_at, updated_at)
+                    SELECT gen_random_uuid(), u.id, 'Chat', now(), now() - make_interval(mins => n)
+                    FROM users u, generate_series(1, 200) n""");
+            statement.execute("""
+                    INSERT INTO messages (id, conversation_id, role, content, created_at)
+                    SELECT gen_random_uuid(), c.id, 'user', 'Hello', now() - make_interval(secs => n)
+                    FROM (SELECT id FROM conversations LIMIT 500) c, generate_series(1, 200) n""");
+            statement.execute("ANALYZE");
+            // Tables this small could still legitimately be scanned; make any plan that needs one stand out
+            statement.execute("SET enable_seqscan = off");
+            try (ResultSet rs = statement.executeQuery("SELECT conversation_id FROM messages LIMIT 1")) {
+                rs.next();
+                conversationId = rs.getObject(1, UUID.class);
+            }
+        }
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    // ── Conversations ────────────────────────────────────────
+
+    @Test
+    void firstConversationPageUsesUserIndex() throws Exception {
+        assertIndexOrdered("""
+                SELECT id, title, created_at, updated_at FROM conversations
+                WHERE user_id = ? ORDER BY updated_at DESC, id DESC LIMIT 20""", 1L);
+    }
+
+    @Test
+    void conversationPageBeforeCursorUsesUserIndex() throws Exception {
+        assertIndexOrdered("""
+                SELECT id, title, created_at, updated_at FROM conversations
+                WHERE user_id = ? AND (updated_at < ? OR (updated_at = ? AND id < ?))
+                ORDER BY updated_at DESC, id DESC LIMIT 20""",
+                1L, Timestamp.valueOf(LocalDateTime.now()), Timestamp.valueOf(LocalDateTime.now()), UUID.randomUUID());
+    }
+
+    @Test
+    void archiveCandidatesUseArchivableIndex() throws Exception {
+        assertIndexOrdered("""
+                SELECT id FROM conversations
+                WHERE updated_at < ? AND (archived_at IS NULL OR archived_at < updated_at)
+                ORDER BY updated_at LIMIT 100""", Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    @Test
+    void searchUsesUserScopedFullTextIndex() throws Exception {
+        String sql = """
+                SELECT conversation_id FROM conversation_search s
+                WHERE s.user_id = (SELECT CAST(? AS bigint))
+                  AND s.search_vector @@ CAST(regexp_replace(querytree(websearch_to_tsquery('english', ?)),
+                                                             '<(-|[0-9]+)>', '&', 'g') AS tsquery)
+                  AND querytree(websearch_to_tsquery('english', ?)) <> 'T'
+                ORDER BY s.messages_to DESC NULLS LAST
+                LIMIT 300""";
+        assertThat(indexNames(sql, 1L, "\"hello there\"", "\"hello there\"")).contains("idx_conversation_search_user");
+        // Both conditions go to the index, so only this user's matches are read
+        assertThat(explain(sql, 1L, "\"hello there\"", "\"hello there\"").get(0).get("Plan").findValues("Index Cond"))
+                .anyMatch(cond -> cond.asText().contains("user_id") && cond.asText().contains("search_vector"));
+    }
+
+    @Test
+    void chunkPositionsPointAtTheirMessages() throws Exception {
+        UUID id = UUID.randomUUID();
+        try (PreparedStatement statement = connection.prepareStatement("""
+                INSERT INTO conversations (id, user_id, title, created_at, updated_at)
+                VALUES (?, 1, 'Itchy dog', now(), now())""")) {
+            statement.setObject(1, id);
+            statement.executeUpdate();
+        }
+        // One turn at a time, then a batch, then enough to start a second chunk
+        List<String> contents = List.of("My dog keeps scratching", "Check for fleas", "", "Fleas it is.",
+                "Which flea shampoo?", "x ".repeat(9000), "Is the shampoo safe for puppies?");
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < contents.size(); i++) {
+            ids.add(UUID.randomUUID());
+        }
+        int[][] statements = {{0}, {1}, {2, 3, 4}, {5}, {6}};
+        for (int[] batch : statements) {
+            StringBuilder sql = new StringBuilder("INSERT INTO messages (id, conversation_id, role, content, created_at) VALUES ");
+            for (int k = 0; k < batch.length; k++) {
+                sql.append(k == 0 ? "" : ", ").append("(?, ?, 'user', ?, now() + make_interval(secs => ?))");
+            }
+            try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                int p = 1;
+                for (int i : batch) {
+                    statement.setObject(p++, ids.get(i));
+                    statement.setObject(p++, id);
+                    statement.setString(p++, contents.get(i));
+                    statement.setInt(p++, i);
+                }
+                statement.executeUpdate();
+            }
+        }
+
+        // Every message word (weight D) falls in the range of the message it came from
+        try (PreparedStatement statement = connection.prepareStatement("""
+                SELECT u.lexeme, s.message_ids[width_bucket(p.pos - 1, s.message_ends)]
+                FROM conversation_search s, unnest(s.search_vector) u, unnest(u.positions, u.weights) p(pos, weight)
+                WHERE s.conversation_id = ? AND p.weight = 'D' AND u.lexeme <> 'x'
+                ORDER BY s.chunk, p.pos""")) {
+            statement.setObject(1, id);
+            List<String> found = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    found.add(rs.getString(1) + "@" + ids.indexOf(rs.getObject(2, UUID.class)));
+                }
+            }
+            assertThat(found).containsExactly("dog@0", "keep@0", "scratch@0", "check@1", "flea@1", "flea@3",
+                    "flea@4", "shampoo@4", "shampoo@6", "safe@6", "puppi@6");
+        }
+    }
+
+    @Test
+    void longConversationsAreIndexedInBoundedChunks() throws Exception {
+        UUID id = UUID.randomUUID();
+        try (PreparedStatement statement = connection.prepareStatement("""
+                INSERT INTO conversations (id, user_id, title, created_at, updated_at)
+                VALUES (?, 1, 'Kidney diet', now(), now())""")) {
+            statement.setObject(1, id);
+            statement.executeUpdate();
+        }
+        // 300 kB over 300 inserts, one turn at a time: each appends to the latest chunk or starts a new one
+        String content = "my cat is on a renal diet for her kidneys ".repeat(24); // 1,008 bytes
+        try (PreparedStatement statement = connection.prepareStatement("""
+                INSERT INTO messages (id, conversation_id, role, content, created_at)
+                VALUES (gen_random_uuid(), ?, 'user', ?, now() + make_interval(secs => ?))""")) {
+            for (int i = 0; i < 300; i++) {
+                statement.setObject(1, id);
+                statement.setString(2, content);
+                statement.setInt(3, i);
+                statement.executeUpdate();
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement("""
+                SELECT count(*), max(content_bytes), sum(content_bytes) FROM conversation_search
+                WHERE conversation_id = ?""")) {
+            statement.setObject(1, id);
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                assertThat(rs.getInt(1)).isGreaterThanOrEqualTo(17);
+                assertThat(rs.getInt(2)).isLessThan(16384 + content.length());
+                assertThat(rs.getLong(3)).isEqualTo(300L * content.length());
+            }
+        }
+    }
+
+    // ── Messages ────────────────────────────────────────
+
+    @Test
+    void historyUsesConversationIndex() throws Exception {
+        assertIndexed("""
+                SELECT id, role, content, created_at FROM messages
+                WHERE conversation_id = ? ORDER BY created_at ASC, id ASC""", conversationId);
+    }
+
+    @Test
+    void latestMessagesUseConversationIndex() throws Exception {
+        assertIndexOrdered("""
+                SELECT id, role, content, created_at FROM messages
+                WHERE conversation_id = ? ORDER BY created_at DESC, id DESC LIMIT 50""", conversationId);
+    }
+
+    @Test
+    void messagesBeforeCursorUseConversationIndex() throws Exception {
+        assertIndexOrdered("""
+                SELECT id, role, content, created_at FROM messages
+                WHERE conversation_id = ? AND (created_at < ? OR (created_at = ? AND id < ?))
+                ORDER BY created_at DESC, id DESC LIMIT 50""",
+                conversationId, Timestamp.valueOf(LocalDateTime.now()), Timestamp.valueOf(LocalDateTime.now()),
+                UUID.randomUUID());
+    }
+
+    // ── Plan inspection ────────────────────────────────────────
+
+    // Full reads only need the index to find the rows; the planner may still sort them in memory
+    private static void assertIndexed(String sql, Object... params) throws Exception {
+        assertThat(planNodes(sql, params))
+                .as("plan for: %s", sql)
+                .doesNotContain("Seq Scan");
+    }
+
+    // Pages must walk the index in order and stop at the limit, so no sort either
+    private static void assertIndexOrdered(String sql, Object... params) throws Exception {
+        assertThat(planNodes(sql, params))
+                .as("plan for: %s", sql)
+                .doesNotContain("Seq Scan", "Sort", "Incremental Sort")
+                .anyMatch(node -> node.startsWith("Index"));
+    }
+
+    private static List<String> planNodes(String sql, Object... params) throws Exception {
+        List<String> nodes = new ArrayList<>();
+        collectNodeTypes(explain(sql, params).get(0).get("Plan"), nodes);
+        return nodes;
+    }
+
+    private static List<String> indexNames(String sql, Object... params) throws Exception {
+        List<String> names = new ArrayList<>();
+        explain(sql, params).get(0).get("Plan").findValues("Index Name").forEach(name -> names.add(name.asText()));
+        return names;
+    }
+
+    private static JsonNode explain(String sql, Object... params) throws SQLException, JsonProcessingException {
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN (FORMAT JSON) " + sql)) {
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return JSON.readTree(rs.getString(1));
+            }
+        }
+    }
+
+    private static void collectNodeTypes(JsonNode plan, List<String> nodes) {
+        nodes.add(plan.get("Node Type").asText());
+        for (JsonNode child : plan.path("Plans")) {
+            collectNodeTypes(child, nodes);
+        }
+    }
+}
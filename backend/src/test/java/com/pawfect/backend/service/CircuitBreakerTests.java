@@ -0,0 +1,92 @@
+package com.pawfect.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * State transitions of {@link CircuitBreaker}: closed, open after the threshold, half-open with a single
+ * probe once the open period is over, then closed or re-opened by the probe's outcome.
+ */
+class CircuitBreakerTests {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofSeconds(10), now::get);
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onFailure();
+        }
+    }
+
+    @Test
+    void staysClosedBelowTheThreshold() {
+        fail(2);
+        assertThat(breaker.isOpen()).isFalse();
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void successResetsTheFailureCount() {
+        fail(2);
+        breaker.onSuccess();
+        fail(2);
+        assertThat(breaker.isOpen()).isFalse();
+    }
+
+    @Test
+    void opensAtTheThresholdAndRejectsForTheOpenPeriod() {
+        fail(3);
+        assertThat(breaker.isOpen()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(breaker.remainingOpen()).isEqualTo(Duration.ofSeconds(10));
+
+        now.addAndGet(9_999);
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(breaker.remainingOpen()).isEqualTo(Duration.ofMillis(1));
+    }
+
+    @Test
+    void letsASingleProbeThroughOnceTheOpenPeriodIsOver() {
+        fail(3);
+        now.addAndGet(10_000);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse(); // the probe is still in flight
+        assertThat(breaker.isOpen()).isTrue();
+        assertThat(breaker.remainingOpen()).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    void successfulProbeClosesTheCircuit() {
+        fail(3);
+        now.addAndGet(10_000);
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onSuccess();
+
+        assertThat(breaker.isOpen()).isFalse();
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+        fail(2);
+        assertThat(breaker.isOpen()).isFalse(); // counting starts again from zero
+    }
+
+    @Test
+    void failedProbeReopensForAnotherFullPeriod() {
+        fail(3);
+        now.addAndGet(15_000);
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure(); // a single failure is enough while half-open
+
+        assertThat(breaker.isOpen()).isTrue();
+        assertThat(breaker.remainingOpen()).isEqualTo(Duration.ofSeconds(10));
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        now.addAndGet(10_000);
+        assertThat(breaker.tryAcquire()).isTrue(); // and then probes again
+    }
+}
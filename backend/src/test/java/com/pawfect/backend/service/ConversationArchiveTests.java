@@ -0,0 +1,74 @@
+package com.pawfect.backend.service;
+
+import com.pawfect.backend.repository.MessageView;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The message archive payload format: {@link ConversationArchive#pack} and {@link ConversationArchive#unpack}.
+ */
+class ConversationArchiveTests {
+
+    private static MessageView message(String role, String content, LocalDateTime createdAt) {
+        return new ConversationArchive.ArchivedMessage(UUID.randomUUID().toString(), role, content, createdAt);
+    }
+
+    private static void assertSameMessages(List<MessageView> actual, List<MessageView> expected) {
+        assertThat(actual).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getId()).isEqualTo(expected.get(i).getId());
+            assertThat(actual.get(i).getRole()).isEqualTo(expected.get(i).getRole());
+            assertThat(actual.get(i).getContent()).isEqualTo(expected.get(i).getContent());
+            assertThat(actual.get(i).getCreatedAt()).isEqualTo(expected.get(i).getCreatedAt());
+        }
+    }
+
+    @Test
+    void roundTripsMessagesInOrder() {
+        LocalDateTime start = LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_000);
+        List<MessageView> messages = List.of(
+                message("user", "My cat 🐱 won't eat — should I worry?", start),
+                message("assistant", "🟡 Concerning – schedule a vet visit.\n\nÇa va?", start.plusNanos(1_000)),
+                message("user", "", start.plusSeconds(60)),
+                message("assistant", "x".repeat(200_000), start.minusYears(30))); // before the epoch and long
+
+        assertSameMessages(ConversationArchive.unpack(ConversationArchive.pack(messages)), messages);
+    }
+
+    @Test
+    void roundTripsAnEmptyConversation() {
+        assertThat(ConversationArchive.unpack(ConversationArchive.pack(List.of()))).isEmpty();
+    }
+
+    @Test
+    void compressesRepetitiveText() {
+        List<MessageView> messages = List.of(
+                message("user", "How often should I feed my puppy? ".repeat(100), LocalDateTime.now()));
+        assertThat(ConversationArchive.pack(messages).length).isLessThan(500);
+    }
+
+    @Test
+    void rejectsAnUnknownFormat() {
+        byte[] payload = ConversationArchive.pack(List.of(message("user", "Hi", LocalDateTime.now())));
+        payload[0] = 42;
+        assertThatThrownBy(() -> ConversationArchive.unpack(payload))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Unknown message archive format");
+        assertThatThrownBy(() -> ConversationArchive.unpack(new byte[0])).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void rejectsATruncatedPayload() {
+        byte[] payload = ConversationArchive.pack(List.of(message("user", "Hello there", LocalDateTime.now())));
+        byte[] truncated = Arrays.copyOf(payload, payload.length / 2);
+        assertThatThrownBy(() -> ConversationArchive.unpack(truncated)).isInstanceOf(UncheckedIOException.class);
+    }
+}
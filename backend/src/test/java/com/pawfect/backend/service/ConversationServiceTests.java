@@ -0,0 +1,167 @@
+package com.pawfect.backend.service;
+
+import com.pawfect.backend.dto.Dtos.ChatMessage;
+import com.pawfect.backend.dto.Dtos.ChatRequest;
+import com.pawfect.backend.dto.Dtos.ConversationSearchResult;
+import com.pawfect.backend.entity.ChatMessageEntity;
+import com.pawfect.backend.entity.Conversation;
+import com.pawfect.backend.entity.User;
+import com.pawfect.backend.repository.ChatMessageRepository;
+import com.pawfect.backend.repository.ConversationRepository;
+import com.pawfect.backend.repository.ConversationSearchView;
+import com.pawfect.backend.repository.MessageView;
+import com.pawfect.backend.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A chat turn whose model call fails leaves nothing behind for the client's retry to repeat: the user message
+ * is taken back out, along with the conversation if the turn created it. Also covers search snippets for
+ * messages that only the archive still holds.
+ */
+class ConversationServiceTests {
+
+    private static final long USER_ID = 7;
+    private static final String CONVERSATION_ID = "01890a5d-ac96-774b-bcce-b302099a8057";
+    private static final String MESSAGE_ID = "01890a5d-ac97-7c3d-9a1e-5f0c2b8d4e11";
+
+    private final ConversationRepository conversations = mock(ConversationRepository.class);
+    private final ChatMessageRepository messages = mock(ChatMessageRepository.class);
+    private final UserRepository users = mock(UserRepository.class);
+    private final LlmProvider llmProvider = mock(LlmProvider.class);
+    private final ConversationContext context = mock(ConversationContext.class);
+    private final MessageWriteBehind writeBehind = mock(MessageWriteBehind.class);
+    private final ConversationArchive archive = mock(ConversationArchive.class);
+    private final User user = User.builder().id(USER_ID).build();
+
+    private final ConversationService service = new ConversationService(conversations, messages, users, llmProvider,
+            context, archive, mock(ConversationSummarizer.class), null,
+            new TransactionTemplate(mock(PlatformTransactionManager.class)), writeBehind, new SimpleMeterRegistry());
+
+    @BeforeEach
+    void init() {
+        service.init();
+        when(users.getReferenceById(USER_ID)).thenReturn(user);
+        when(conversations.findByIdAndUser(CONVERSATION_ID, user)).thenReturn(Optional.of(conversation()));
+        when(conversations.save(any())).thenAnswer(invocation -> {
+            Conversation conversation = invocation.getArgument(0);
+            conversation.setId(CONVERSATION_ID);
+            return conversation;
+        });
+        when(messages.save(any())).thenAnswer(invocation -> {
+            ChatMessageEntity message = invocation.getArgument(0);
+            message.setId(MESSAGE_ID);
+            return message;
+        });
+        when(context.history(eq(CONVERSATION_ID), any())).thenReturn(new ConversationContext.History(
+                null, 0, 0, List.of(new ChatMessage("user", "Is chocolate bad for dogs?")), 1));
+        when(llmProvider.reserve(anyLong())).thenReturn(mock(UpstreamGate.Pass.class));
+        when(llmProvider.chat(any(), any())).thenThrow(new RetryAfterException(HttpStatus.SERVICE_UNAVAILABLE,
+                "AI service is busy, try again shortly", Duration.ofSeconds(1)));
+    }
+
+    private Conversation conversation() {
+        return Conversation.builder().id(CONVERSATION_ID).user(user).title("Chocolate").build();
+    }
+
+    private void sendFails(String conversationId) {
+        ChatRequest request = new ChatRequest(conversationId, null, "Is chocolate bad for dogs?");
+        assertThatThrownBy(() -> service.sendMessage(request, USER_ID)).isInstanceOf(RetryAfterException.class);
+    }
+
+    @Test
+    void failedReplyTakesBackTheUserMessage() {
+        sendFails(CONVERSATION_ID);
+
+        verify(messages).deleteAllByIds(List.of(MESSAGE_ID));
+        verify(conversations, never()).deleteByIdAndUser(any(), any());
+        verify(context).evict(CONVERSATION_ID);
+    }
+
+    @Test
+    void failedFirstReplyDeletesTheNewConversation() {
+        sendFails(null);
+
+        verify(conversations).deleteByIdAndUser(CONVERSATION_ID, user);
+        verify(messages, never()).deleteAllByIds(any());
+    }
+
+    @Test
+    void queuedUserMessageIsWithdrawn() {
+        when(writeBehind.isEnabled()).thenReturn(true);
+        when(writeBehind.enqueue(CONVERSATION_ID, "user", "Is chocolate bad for dogs?")).thenReturn(MESSAGE_ID);
+        when(writeBehind.withdraw(MESSAGE_ID)).thenReturn(true);
+
+        sendFails(CONVERSATION_ID);
+
+        verify(writeBehind).withdraw(MESSAGE_ID);
+        verify(messages, never()).deleteAllByIds(any());
+    }
+
+    @Test
+    void alreadyWrittenUserMessageIsDeleted() {
+        when(writeBehind.isEnabled()).thenReturn(true);
+        when(writeBehind.enqueue(CONVERSATION_ID, "user", "Is chocolate bad for dogs?")).thenReturn(MESSAGE_ID);
+        when(writeBehind.withdraw(MESSAGE_ID)).thenReturn(false);
+
+        sendFails(CONVERSATION_ID);
+
+        verify(messages).deleteAllByIds(List.of(MESSAGE_ID));
+    }
+
+    @Test
+    void archivedMessageIsQuotedFromTheArchive() {
+        LocalDateTime archivedAt = LocalDateTime.of(2026, 3, 1, 4, 0);
+        ConversationSearchView hit = mock(ConversationSearchView.class);
+        when(hit.getId()).thenReturn(CONVERSATION_ID);
+        when(hit.getMessageId()).thenReturn(MESSAGE_ID);
+        when(hit.getArchivedAt()).thenReturn(archivedAt);
+        when(conversations.search(eq(USER_ID), eq("chocolate"), anyInt(), anyInt(), anyInt())).thenReturn(List.of(hit));
+        MessageView archived = mock(MessageView.class);
+        when(archived.getId()).thenReturn(MESSAGE_ID);
+        when(archived.getContent()).thenReturn("Is chocolate bad for dogs?");
+        when(archive.messages(CONVERSATION_ID, archivedAt)).thenReturn(List.of(archived));
+        when(conversations.searchSnippet("Is chocolate bad for dogs?", "chocolate"))
+                .thenReturn("Is \u0002chocolate\u0003 bad for dogs?");
+
+        ConversationSearchResult result = service.search(USER_ID, "chocolate", 20, null).getResults().get(0);
+
+        assertThat(result.getSnippet()).isEqualTo("Is <mark>chocolate</mark> bad for dogs?");
+        assertThat(result.getMessageId()).isEqualTo(MESSAGE_ID);
+    }
+
+    @Test
+    void messageGoneFromTheArchiveLeavesNoSnippet() {
+        ConversationSearchView hit = mock(ConversationSearchView.class);
+        when(hit.getId()).thenReturn(CONVERSATION_ID);
+        when(hit.getMessageId()).thenReturn(MESSAGE_ID);
+        when(hit.getArchivedAt()).thenReturn(LocalDateTime.of(2026, 3, 1, 4, 0));
+        when(conversations.search(eq(USER_ID), eq("chocolate"), anyInt(), anyInt(), anyInt())).thenReturn(List.of(hit));
+        when(archive.messages(eq(CONVERSATION_ID), any())).thenReturn(List.of());
+
+        ConversationSearchResult result = service.search(USER_ID, "chocolate", 20, null).getResults().get(0);
+
+        assertThat(result.getSnippet()).isNull();
+        assertThat(result.getMessageId()).isNull();
+    }
+}
@@ -0,0 +1,90 @@
+package com.pawfect.backend.service;
+
+import com.pawfect.backend.dto.Dtos.ChatMessage;
+import com.pawfect.backend.entity.Conversation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link ConversationSummarizer#condense}: client-sent history only has its leading messages replaced by the
+ * stored summary when they are the messages the summary was made from.
+ */
+class ConversationSummarizerTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ConversationSummarizer summarizer = new ConversationSummarizer(null, null, null, null, meterRegistry);
+
+    private final List<ChatMessage> history = List.of(
+            new ChatMessage("user", "My puppy chewed a sock"),
+            new ChatMessage("assistant", "🟡 Watch for vomiting or a swollen belly."),
+            new ChatMessage("user", "He seems fine so far"),
+            new ChatMessage("assistant", "🟢 Good, keep an eye on him for a day."),
+            new ChatMessage("user", "Can he eat tonight?"));
+
+    @BeforeEach
+    void init() {
+        summarizer.init();
+    }
+
+    // A summary of the first `covered` messages of `source`, as the summarizer stores it
+    private static Conversation summarized(List<ChatMessage> source, int covered) {
+        return Conversation.builder()
+                .summary("Puppy swallowed a sock, no symptoms yet.")
+                .summaryMessageCount(covered)
+                .summaryPrefixHash(ConversationSummarizer.prefixHash(source.subList(0, covered)))
+                .build();
+    }
+
+    private double mismatches() {
+        return meterRegistry.counter("pawfect.chat.summary.prefix.mismatch").count();
+    }
+
+    @Test
+    void replacesTheCoveredMessagesWithTheSummary() {
+        List<ChatMessage> prompt = summarizer.condense(summarized(history, 3), history);
+
+        assertThat(prompt).hasSize(3);
+        assertThat(prompt.get(0)).isEqualTo(ConversationContext.summaryMessage("Puppy swallowed a sock, no symptoms yet."));
+        assertThat(prompt.subList(1, 3)).isEqualTo(history.subList(3, 5));
+        assertThat(mismatches()).isZero();
+    }
+
+    @Test
+    void sendsAnEditedHistoryAsItCame() {
+        List<ChatMessage> edited = new ArrayList<>(history);
+        edited.set(1, new ChatMessage("assistant", "🔴 Go to the vet now."));
+
+        assertThat(summarizer.condense(summarized(history, 3), edited)).isSameAs(edited);
+        assertThat(mismatches()).isEqualTo(1);
+    }
+
+    @Test
+    void sendsAShiftedHistoryAsItCame() {
+        // The client dropped the first message: the count still fits but the prefix doesn't
+        List<ChatMessage> trimmed = history.subList(1, 5);
+
+        assertThat(summarizer.condense(summarized(history, 3), trimmed)).isSameAs(trimmed);
+        assertThat(mismatches()).isEqualTo(1);
+    }
+
+    @Test
+    void sendsTheHistoryAsItCameWithoutAStoredFingerprint() {
+        Conversation conversation = summarized(history, 3);
+        conversation.setSummaryPrefixHash(null); // summarized before fingerprints were stored
+
+        assertThat(summarizer.condense(conversation, history)).isSameAs(history);
+    }
+
+    @Test
+    void fingerprintKeepsRoleAndContentApart() {
+        byte[] one = ConversationSummarizer.prefixHash(List.of(new ChatMessage("user", "ab")));
+        byte[] other = ConversationSummarizer.prefixHash(List.of(new ChatMessage("usera", "b")));
+        assertThat(one).isNotEqualTo(other);
+    }
+}
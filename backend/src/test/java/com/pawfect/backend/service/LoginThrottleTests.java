@@ -0,0 +1,43 @@
+package com.pawfect.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Who {@link LoginThrottle} turns away: failed guesses at an email use up that email's budget only from
+ * the IP they came from, so the account's owner can still sign in from anywhere else.
+ */
+class LoginThrottleTests {
+
+    private final LoginThrottle throttle = new LoginThrottle(new InMemoryRateLimitBackend(1000, 15), true, 1, 5, 10, 20);
+
+    // Failed attempts (never released) until the throttle says no
+    private void exhaust(String clientIp, String email) {
+        assertThatThrownBy(() -> {
+            for (int i = 0; i < 100; i++) {
+                throttle.acquire(clientIp, email);
+            }
+        }).isInstanceOfSatisfying(RetryAfterException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+    }
+
+    @Test
+    void guessingFromOneIpDoesNotLockTheOwnerOut() {
+        exhaust("203.0.113.7", "owner@example.com");
+
+        throttle.acquire("198.51.100.1", "Owner@Example.com ");
+        throttle.release("198.51.100.1", "owner@example.com");
+    }
+
+    @Test
+    void guessingIpIsStillLimitedOnThatEmail() {
+        exhaust("203.0.113.7", "owner@example.com");
+
+        assertThatThrownBy(() -> throttle.acquire("203.0.113.7", "owner@example.com"))
+                .isInstanceOf(RetryAfterException.class);
+        throttle.acquire("203.0.113.7", "someone-else@example.com"); // the IP itself still has budget
+    }
+}
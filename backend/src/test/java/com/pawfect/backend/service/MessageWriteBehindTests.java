@@ -0,0 +1,91 @@
+package com.pawfect.backend.service;
+
+import com.pawfect.backend.entity.ChatMessageEntity;
+import com.pawfect.backend.repository.ChatMessageRepository;
+import com.pawfect.backend.repository.ConversationRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Shutdown of {@link MessageWriteBehind}: every message it accepted is written, whether it was queued before
+ * {@code stop()} (the final drain) or arrived after (written directly).
+ */
+class MessageWriteBehindTests {
+
+    private static final String CONVERSATION_ID = "01890a5d-ac96-774b-bcce-b302099a8057";
+
+    private final EntityManager entityManager = mock(EntityManager.class);
+    private final Set<String> written = ConcurrentHashMap.newKeySet();
+    private final MessageWriteBehind writeBehind = new MessageWriteBehind(entityManager,
+            mock(ConversationRepository.class), mock(ChatMessageRepository.class),
+            new TransactionTemplate(mock(PlatformTransactionManager.class)), new SimpleMeterRegistry());
+
+    @BeforeEach
+    void start() {
+        doAnswer(invocation -> written.add(invocation.<ChatMessageEntity>getArgument(0).getId()))
+                .when(entityManager).persist(any());
+        ReflectionTestUtils.setField(writeBehind, "enabled", true);
+        ReflectionTestUtils.setField(writeBehind, "queueCapacity", 10_000);
+        ReflectionTestUtils.setField(writeBehind, "batchSize", 50);
+        ReflectionTestUtils.setField(writeBehind, "maxLagMs", 10L);
+        ReflectionTestUtils.setField(writeBehind, "enqueueTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(writeBehind, "flushOnShutdown", true);
+        ReflectionTestUtils.setField(writeBehind, "shutdownTimeoutMs", 5000L);
+        writeBehind.start();
+    }
+
+    @Test
+    void messageAfterStopIsWrittenDirectly() throws InterruptedException {
+        writeBehind.stop();
+
+        String id = writeBehind.enqueue(CONVERSATION_ID, "assistant", "🟢 Rest and fresh water.");
+        assertThat(written).containsExactly(id);
+        assertThat(writeBehind.pending(CONVERSATION_ID)).isEmpty();
+    }
+
+    @Test
+    void noMessageIsLostToARacingStop() throws InterruptedException {
+        Set<String> accepted = ConcurrentHashMap.newKeySet();
+        AtomicBoolean stopped = new AtomicBoolean();
+        CountDownLatch producing = new CountDownLatch(8);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 8; p++) {
+            producers.add(Thread.ofPlatform().start(() -> {
+                producing.countDown();
+                // Keep going a little past stop() so some enqueues land on each side of it
+                for (int after = 0; after < 20; ) {
+                    accepted.add(writeBehind.enqueue(CONVERSATION_ID, "user", "Is grass safe for cats?"));
+                    if (stopped.get()) {
+                        after++;
+                    }
+                }
+            }));
+        }
+        producing.await();
+        Thread.sleep(20);
+        writeBehind.stop();
+        stopped.set(true);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertThat(written).isEqualTo(accepted);
+    }
+}
@@ -0,0 +1,322 @@
+package com.pawfect.backend.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Retry, Retry-After, circuit breaker, read timeout and hedging behaviour of {@link UpstreamClient}, against a local
+ * HTTP server that answers from a script of responses (the last one repeats).
+ */
+class UpstreamClientTests {
+
+    private interface Reply {
+        void send(HttpExchange exchange) throws IOException, InterruptedException;
+    }
+
+    private final ConcurrentLinkedQueue<Reply> script = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile Reply last;
+
+    private HttpServer server;
+    private UpstreamGate gate;
+    private UpstreamClient client;
+    private HttpRequest request;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            Reply reply = script.poll();
+            if (reply != null) {
+                last = reply;
+            }
+            try (exchange) {
+                last.send(exchange);
+            } catch (InterruptedException | IOException e) {
+                // client went away
+            }
+        });
+        server.start();
+        request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/"))
+                .timeout(Duration.ofSeconds(5))
+                .POST(HttpRequest.BodyPublishers.ofString("{}"))
+                .build();
+
+        gate = new UpstreamGate(new UpstreamAdmission(false, 1, 1, 0, 0), 2, 10);
+        client = new UpstreamClient(new SimpleMeterRegistry(), gate);
+        ReflectionTestUtils.setField(client, "connectTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(client, "readTimeoutMs", 200L);
+        ReflectionTestUtils.setField(client, "maxAttempts", 3);
+        ReflectionTestUtils.setField(client, "initialBackoffMs", 10L);
+        ReflectionTestUtils.setField(client, "maxBackoffMs", 500L);
+        ReflectionTestUtils.setField(client, "failureThreshold", 1);
+        ReflectionTestUtils.setField(client, "circuitOpenMs", 100L);
+    }
+
+    @AfterEach
+    void stop() {
+        client.stop();
+        server.stop(0);
+    }
+
+    private static Reply status(int status, String... headers) {
+        return exchange -> {
+            for (int i = 0; i < headers.length; i += 2) {
+                exchange.getResponseHeaders().add(headers[i], headers[i + 1]);
+            }
+            byte[] body = ("status " + status).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        };
+    }
+
+    private static String body(HttpResponse<InputStream> response) throws IOException {
+        try (InputStream body = response.body()) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void retriesServerErrorsUntilOneSucceeds() throws IOException {
+        ReflectionTestUtils.setField(client, "failureThreshold", 5);
+        client.init();
+        script.add(status(502));
+        script.add(status(503));
+        script.add(status(200));
+
+        assertThat(body(client.send(request))).isEqualTo("status 200");
+        assertThat(requests).hasValue(3);
+        assertThat(client.isCircuitOpen()).isFalse();
+    }
+
+    @Test
+    void waitsTheRetryAfterTheProviderAsksFor() throws IOException {
+        client.init();
+        script.add(status(429, "Retry-After", "0.3"));
+        script.add(status(200));
+
+        long start = System.nanoTime();
+        assertThat(body(client.send(request))).isEqualTo("status 200");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(300);
+        assertThat(client.isCircuitOpen()).isFalse(); // a 429 means the provider is up
+    }
+
+    @Test
+    void passesOnARetryAfterLongerThanTheBackoffCap() {
+        client.init();
+        script.add(status(429, "Retry-After", "7"));
+
+        assertThatThrownBy(() -> client.send(request))
+                .isInstanceOfSatisfying(RetryAfterException.class, e -> {
+                    assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+                    assertThat(e.getRetryAfter()).isEqualTo(Duration.ofSeconds(7));
+                });
+        assertThat(requests).hasValue(1);
+    }
+
+    @Test
+    void failsFastWhileTheCircuitIsOpenThenProbes() throws Exception {
+        ReflectionTestUtils.setField(client, "maxAttempts", 1);
+        client.init();
+        script.add(status(500));
+        script.add(status(200));
+
+        assertThatThrownBy(() -> client.send(request)).isInstanceOf(RetryAfterException.class);
+        assertThat(client.isCircuitOpen()).isTrue();
+        assertThatThrownBy(() -> client.send(request))
+                .isInstanceOfSatisfying(RetryAfterException.class,
+                        e -> assertThat(e.getReason()).isEqualTo("The assistant is temporarily unavailable"));
+        assertThat(requests).hasValue(1);
+
+        Thread.sleep(150);
+        assertThat(body(client.send(request))).isEqualTo("status 200");
+        assertThat(client.isCircuitOpen()).isFalse();
+    }
+
+    @Test
+    void interruptedProbeDoesNotWedgeTheCircuit() throws Exception {
+        ReflectionTestUtils.setField(client, "maxAttempts", 1);
+        client.init();
+        script.add(status(500));
+        script.add(exchange -> {
+            Thread.sleep(2000); // the probe: the caller is interrupted while it waits
+            status(200).send(exchange);
+        });
+        script.add(status(200));
+
+        assertThatThrownBy(() -> client.send(request)).isInstanceOf(RetryAfterException.class);
+        Thread.sleep(150);
+
+        AtomicReference<Throwable> probeFailure = new AtomicReference<>();
+        Thread probe = Thread.ofPlatform().start(() -> {
+            try {
+                client.send(request);
+            } catch (RuntimeException e) {
+                probeFailure.set(e);
+            }
+        });
+        Thread.sleep(200);
+        probe.interrupt();
+        probe.join(5000);
+        assertThat(probeFailure.get()).isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+
+        // The abandoned probe counts as a failed one: the circuit stays open for another period, then lets
+        // the next probe through
+        Thread.sleep(150);
+        assertThat(body(client.send(request))).isEqualTo("status 200");
+        assertThat(client.isCircuitOpen()).isFalse();
+    }
+
+    @Test
+    void stalledBodyFailsWithTimeout() throws IOException {
+        client.init();
+        script.add(exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write("data: {}\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            Thread.sleep(5000); // headers and a first chunk, then nothing
+        });
+
+        HttpResponse<InputStream> response = client.send(request);
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> body(response))
+                .isInstanceOf(HttpTimeoutException.class)
+                .hasMessageContaining("200 ms");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+    }
+
+    @Test
+    void slowButSteadyBodyIsNotCutOff() throws IOException {
+        client.init();
+        script.add(exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            for (int i = 0; i < 6; i++) {
+                out.write("x".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                Thread.sleep(100); // under the read timeout each time, well over it in total
+            }
+        });
+
+        assertThat(body(client.send(request))).isEqualTo("xxxxxx");
+    }
+
+    private static Reply slowThen(Reply reply) {
+        return exchange -> {
+            Thread.sleep(1000);
+            reply.send(exchange);
+        };
+    }
+
+    @Test
+    void hedgeRunsUnderItsOwnPermitAndGivesItBack() throws IOException {
+        ReflectionTestUtils.setField(client, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(client, "hedgeDelayMs", 50L);
+        ReflectionTestUtils.setField(client, "hedgeMinSamples", 50L);
+        client.init();
+        script.add(slowThen(status(200)));
+        script.add(status(200, "X-Copy", "hedge")); // answers first
+
+        try (UpstreamGate.Pass pass = gate.enter(10)) {
+            HttpResponse<InputStream> response = client.send(request, pass);
+            assertThat(response.headers().firstValue("X-Copy")).hasValue("hedge");
+            response.body().close();
+            assertThat(gate.inFlight()).isEqualTo(1); // only the caller's permit is still held
+        }
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void fastHedgeErrorDoesNotBeatASlowSuccess() throws IOException {
+        ReflectionTestUtils.setField(client, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(client, "hedgeDelayMs", 50L);
+        ReflectionTestUtils.setField(client, "hedgeMinSamples", 50L);
+        ReflectionTestUtils.setField(client, "maxAttempts", 1);
+        ReflectionTestUtils.setField(client, "failureThreshold", 5);
+        client.init();
+        script.add(slowThen(status(200)));
+        script.add(status(503)); // the hedge: fails first
+
+        try (UpstreamGate.Pass pass = gate.enter(10)) {
+            assertThat(body(client.send(request, pass))).isEqualTo("status 200");
+        }
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void errorIsReturnedOnceBothCopiesFail() {
+        ReflectionTestUtils.setField(client, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(client, "hedgeDelayMs", 50L);
+        ReflectionTestUtils.setField(client, "hedgeMinSamples", 50L);
+        ReflectionTestUtils.setField(client, "maxAttempts", 1);
+        ReflectionTestUtils.setField(client, "failureThreshold", 5);
+        client.init();
+        script.add(slowThen(status(400)));
+        script.add(status(503, "Retry-After", "7")); // the hedge: fails first, and is the status reported
+
+        try (UpstreamGate.Pass pass = gate.enter(10)) {
+            assertThatThrownBy(() -> client.send(request, pass))
+                    .isInstanceOfSatisfying(RetryAfterException.class,
+                            e -> assertThat(e.getRetryAfter()).isEqualTo(Duration.ofSeconds(7)));
+            assertThat(gate.inFlight()).isEqualTo(1);
+        }
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void hedgeIsSkippedWithoutASparePermit() throws IOException {
+        ReflectionTestUtils.setField(client, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(client, "hedgeDelayMs", 50L);
+        client.init();
+        script.add(slowThen(status(200)));
+
+        try (UpstreamGate.Pass pass = gate.enter(10); UpstreamGate.Pass other = gate.enter(10)) {
+            assertThat(body(client.send(request, pass))).isEqualTo("status 200");
+        }
+        assertThat(requests).hasValue(1);
+    }
+
+    @Test
+    void hedgeDelayFollowsTheRecordedP95() throws IOException {
+        ReflectionTestUtils.setField(client, "hedgeDelayMs", 8000L);
+        ReflectionTestUtils.setField(client, "hedgeMinSamples", 5L);
+        client.init();
+        script.add(status(200));
+
+        assertThat(client.hedgeDelayMs()).isEqualTo(8000); // too few samples yet
+        for (int i = 0; i < 5; i++) {
+            body(client.send(request));
+        }
+        assertThat(client.hedgeDelayMs()).isLessThan(1000);
+    }
+}
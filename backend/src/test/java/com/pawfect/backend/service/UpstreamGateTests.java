@@ -0,0 +1,77 @@
+package com.pawfect.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * How {@link UpstreamGate} passes hand back what they hold: the reservation is settled or refunded once, the
+ * permit is released once, and a call turned away at the permit keeps nothing. Admission never waits here
+ * (max-wait 0), so a bucket that is short rejects straight away.
+ */
+class UpstreamGateTests {
+
+    private final UpstreamAdmission admission = new UpstreamAdmission(true, 1000, 1000, 10, 0);
+    private final UpstreamGate gate = new UpstreamGate(admission, 1, 10);
+
+    private static void assertRejected(Runnable call, HttpStatus status) {
+        assertThatThrownBy(call::run).isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(status));
+    }
+
+    @Test
+    void refundGivesTheWholeReservationBack() {
+        UpstreamGate.Pass pass = gate.enter(1000);
+        pass.refund();
+        pass.close();
+
+        gate.enter(1000).close(); // the bucket is full again
+    }
+
+    @Test
+    void settleKeepsOnlyWhatTheCallUsed() {
+        try (UpstreamGate.Pass pass = gate.enter(1000)) {
+            pass.settle(400);
+            pass.refund(); // already settled: no effect
+        }
+
+        gate.enter(600).close();
+        assertRejected(() -> gate.enter(600), HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    @Test
+    void closingTwiceReleasesThePermitOnce() {
+        UpstreamGate.Pass pass = gate.enter(10);
+        pass.close();
+        pass.close();
+
+        try (UpstreamGate.Pass held = gate.enter(10)) {
+            assertRejected(() -> gate.enter(10), HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    @Test
+    void permitTimeoutTellsTheClientWhenToRetry() {
+        try (UpstreamGate.Pass held = gate.enter(10)) {
+            assertThatThrownBy(() -> gate.enter(10)).isInstanceOfSatisfying(RetryAfterException.class, e -> {
+                assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+                assertThat(e.getRetryAfter()).isEqualTo(UpstreamGate.PERMIT_RETRY_AFTER);
+                assertThat(e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+            });
+        }
+    }
+
+    @Test
+    void callTurnedAwayAtThePermitKeepsNoReservation() {
+        try (UpstreamGate.Pass held = gate.enter(500)) {
+            assertRejected(() -> gate.enter(500), HttpStatus.SERVICE_UNAVAILABLE);
+            held.refund();
+        }
+
+        gate.enter(1000).close();
+    }
+}